@@ -0,0 +1,43 @@
+package com.oneinstep.myrpc.core.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Method level settings of a remote service, put on the method of the service interface
+ * The settings override the ones of {@link RpcReference}
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RpcMethod {
+
+    /**
+     * timeout of the call in milliseconds, 0 means use the timeout of the reference
+     *
+     * @return timeout in milliseconds
+     */
+    long timeoutMs() default 0;
+
+    /**
+     * cluster strategy: failfast, failover or hedged, empty means use the strategy of the reference
+     *
+     * @return cluster strategy name
+     */
+    String cluster() default "";
+
+    /**
+     * retries of the failover strategy, negative means use the retries of the reference
+     *
+     * @return retries
+     */
+    int retries() default -1;
+
+    /**
+     * whether the method may be executed more than once with the same arguments.
+     * Only idempotent methods are retried after a timeout or a lost connection, and only they are hedged
+     *
+     * @return true if the method is idempotent
+     */
+    boolean idempotent() default false;
+
+}
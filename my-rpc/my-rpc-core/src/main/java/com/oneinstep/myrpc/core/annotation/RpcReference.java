@@ -4,6 +4,11 @@ import java.lang.annotation.*;
 
 /**
  * mark the field as a reference to the remote service
+ * <p>
+ * A method returning an Iterator or a Stream is a server-streaming call: the result must be drained or closed,
+ * the returned Iterator is AutoCloseable. An abandoned one holds the stream on the provider
+ * until its stream idle timeout.
+ * </p>
  */
 @Target({ElementType.FIELD})
 @Retention(RetentionPolicy.RUNTIME)
@@ -17,4 +22,42 @@ public @interface RpcReference {
      */
     String version() default "DEFAULT";
 
+    /**
+     * timeout of the calls in milliseconds, can be overridden by {@link RpcMethod#timeoutMs()}
+     *
+     * @return timeout in milliseconds
+     */
+    long timeoutMs() default 5000;
+
+    /**
+     * load balancer: random (weighted), round-robin (weighted), least-active (per weight), consistent-hash, p2c
+     * or the name of a balancer registered to LoadBalancerFactory.
+     * All but consistent-hash follow the effective weights, so a warming up provider gets a growing share;
+     * consistent-hash ignores the weights and the warm-up, a key goes to its provider as soon as it is registered
+     *
+     * @return load balancer name
+     */
+    String loadBalance() default "random";
+
+    /**
+     * index of the argument whose value is hashed by the consistent-hash load balancer
+     *
+     * @return argument index
+     */
+    int hashArgument() default 0;
+
+    /**
+     * cluster strategy of the methods: failfast, failover or hedged, can be overridden by {@link RpcMethod#cluster()}
+     *
+     * @return cluster strategy name
+     */
+    String cluster() default "failfast";
+
+    /**
+     * retries of the failover strategy, can be overridden by {@link RpcMethod#retries()}
+     *
+     * @return retries
+     */
+    int retries() default 2;
+
 }
\ No newline at end of file
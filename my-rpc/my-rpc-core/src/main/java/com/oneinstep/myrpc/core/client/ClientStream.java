@@ -0,0 +1,196 @@
+package com.oneinstep.myrpc.core.client;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
+import com.oneinstep.myrpc.core.exception.RpcException;
+import com.oneinstep.myrpc.core.exception.RpcTimeoutException;
+import io.netty.channel.Channel;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The consumer side of one server-streaming call, returned by the proxy as the Iterator of the method
+ * <p>
+ * The elements are buffered until the caller takes them. The provider gets window credits when the call starts,
+ * and the consumed ones back each time half of the window has been consumed, so at most window elements
+ * are buffered here whatever the speed of the provider, and a large result set runs in constant memory.
+ * hasNext() waits at most timeoutMs for the next element, then cancels the stream and fails with
+ * {@link RpcTimeoutException}. close() cancels a stream which is not over; the Stream built by {@link #toStream()}
+ * closes it when it is closed. The caller must drain or close it: a stream left behind grants no more credits
+ * and holds the resources of the provider until the provider's stream idle timeout cancels it.
+ * </p>
+ */
+public class ClientStream implements Iterator<Object>, AutoCloseable {
+
+    /**
+     * the last response arrived without error
+     */
+    private static final Object END = new Object();
+
+    /**
+     * a null element, the queue does not accept null
+     */
+    private static final Object NULL = new Object();
+
+    private final long requestId;
+
+    private final Channel channel;
+
+    private final int window;
+
+    private final long timeoutMs;
+
+    /**
+     * remove the stream from the streams of the connection
+     */
+    private final Runnable onEnd;
+
+    /**
+     * written by the event loop, read by the caller
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * completed by the first element, the end of the stream or its failure
+     */
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    /**
+     * taken from the queue by hasNext() and not returned by next() yet, caller thread only
+     */
+    private Object next;
+
+    /**
+     * elements consumed since the last window update, caller thread only
+     */
+    private int consumed;
+
+    ClientStream(long requestId, Channel channel, int window, long timeoutMs, Runnable onEnd) {
+        this.requestId = requestId;
+        this.channel = channel;
+        this.window = window;
+        this.timeoutMs = timeoutMs;
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * An element or the last response of the stream, called by the event loop
+     *
+     * @param response response
+     */
+    void onResponse(RpcResponse response) {
+        if (response.isStreamItem()) {
+            queue.add(response.getResult() == null ? NULL : response.getResult());
+            started.complete(null);
+            return;
+        }
+        RpcException error = RpcClientHandler.toException(response);
+        if (error != null) {
+            fail(error);
+            return;
+        }
+        if (ended.compareAndSet(false, true)) {
+            onEnd.run();
+            queue.add(END);
+            started.complete(null);
+        }
+    }
+
+    /**
+     * Fail the stream, e.g. when the connection is lost
+     *
+     * @param cause cause
+     */
+    void fail(RpcException cause) {
+        if (ended.compareAndSet(false, true)) {
+            onEnd.run();
+            queue.add(new Failure(cause));
+            started.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Completed by the first element, the end of the stream or its failure: the latency of the call
+     *
+     * @return future of the first response
+     */
+    public CompletableFuture<Void> started() {
+        return started;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RpcException("Interrupted while waiting for stream " + requestId);
+            }
+            if (next == null) {
+                close();
+                throw new RpcTimeoutException("Stream " + requestId + " received no element in " + timeoutMs + " ms");
+            }
+        }
+        if (next instanceof Failure failure) {
+            throw failure.cause();
+        }
+        return next != END;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Stream " + requestId + " is over");
+        }
+        Object element = next;
+        next = null;
+        // 消费了一半的窗口后归还额度
+        if (++consumed >= Math.max(1, window / 2) && !ended.get()) {
+            channel.writeAndFlush(WindowUpdate.grant(requestId, consumed), channel.voidPromise());
+            consumed = 0;
+        }
+        return element == NULL ? null : element;
+    }
+
+    /**
+     * Cancel the stream if it is not over, the provider stops sending and closes its iterator
+     */
+    @Override
+    public void close() {
+        if (ended.compareAndSet(false, true)) {
+            onEnd.run();
+            channel.writeAndFlush(WindowUpdate.cancel(requestId), channel.voidPromise());
+            queue.clear();
+            queue.add(new Failure(new RpcException("Stream " + requestId + " is closed")));
+            started.complete(null);
+        }
+    }
+
+    /**
+     * The stream as a sequential Stream, closing it cancels the call
+     *
+     * @return stream of the elements
+     */
+    public Stream<Object> toStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    private record Failure(RpcException cause) {
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.oneinstep.myrpc.core.client;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.exception.RpcTimeoutException;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The requests of one connection which are waiting for their response
+ * <p>
+ * Keyed by the primitive request id. The table is split into stripes, each one an open addressing
+ * {@link LongObjectHashMap} guarded by its own lock, so the callers and the event loop rarely contend.
+ * </p>
+ */
+public class PendingRequestTable {
+
+    /**
+     * Number of stripes, must be a power of two
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Expire the pending requests whose response does not arrive in time, shared by all connections
+     */
+    private static final HashedWheelTimer TIMEOUT_TIMER =
+            new HashedWheelTimer(new DefaultThreadFactory("my-rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    @SuppressWarnings("unchecked")
+    private final LongObjectHashMap<CompletableFuture<RpcResponse>>[] stripes = new LongObjectHashMap[STRIPES];
+
+    /**
+     * Number of pending requests
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PendingRequestTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongObjectHashMap<>();
+        }
+    }
+
+    /**
+     * Add a pending request, it fails with RpcTimeoutException and is removed if no response arrives in time
+     *
+     * @param requestId request id
+     * @param timeoutMs timeout in milliseconds
+     * @return future completed by the response
+     */
+    public CompletableFuture<RpcResponse> add(long requestId, long timeoutMs) {
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        LongObjectHashMap<CompletableFuture<RpcResponse>> stripe = stripe(requestId);
+        synchronized (stripe) {
+            stripe.put(requestId, future);
+        }
+        size.incrementAndGet();
+        Timeout timeout = TIMEOUT_TIMER.newTimeout(t -> {
+            CompletableFuture<RpcResponse> expired = remove(requestId);
+            if (expired != null) {
+                expired.completeExceptionally(
+                        new RpcTimeoutException("RPC request " + requestId + " timed out after " + timeoutMs + " ms"));
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        // 请求完成后取消超时任务
+        future.whenComplete((response, throwable) -> timeout.cancel());
+        return future;
+    }
+
+    /**
+     * Remove a pending request
+     *
+     * @param requestId request id
+     * @return future of the request, null if the request is not pending
+     */
+    public CompletableFuture<RpcResponse> remove(long requestId) {
+        LongObjectHashMap<CompletableFuture<RpcResponse>> stripe = stripe(requestId);
+        CompletableFuture<RpcResponse> future;
+        synchronized (stripe) {
+            future = stripe.remove(requestId);
+        }
+        if (future != null) {
+            size.decrementAndGet();
+        }
+        return future;
+    }
+
+    /**
+     * Fail all the pending requests, used when the connection is lost
+     *
+     * @param cause cause
+     */
+    public void failAll(Throwable cause) {
+        List<CompletableFuture<RpcResponse>> futures = new ArrayList<>();
+        for (LongObjectHashMap<CompletableFuture<RpcResponse>> stripe : stripes) {
+            synchronized (stripe) {
+                futures.addAll(stripe.values());
+                stripe.clear();
+            }
+        }
+        size.addAndGet(-futures.size());
+        // complete outside the locks, the callbacks may send new requests
+        futures.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /**
+     * Number of pending requests
+     *
+     * @return size
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private LongObjectHashMap<CompletableFuture<RpcResponse>> stripe(long requestId) {
+        // the ids are sequential, the low bits spread them over the stripes evenly
+        return stripes[(int) (requestId ^ (requestId >>> 32)) & (STRIPES - 1)];
+    }
+
+}
@@ -2,20 +2,31 @@ package com.oneinstep.myrpc.core.client;
 
 import com.oneinstep.myrpc.core.codec.RpcDecoder;
 import com.oneinstep.myrpc.core.codec.RpcEncoder;
+import com.oneinstep.myrpc.core.codec.RpcFrameDecoder;
 import com.oneinstep.myrpc.core.dto.RpcRequest;
 import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
+import com.oneinstep.myrpc.core.exception.RpcConnectException;
 import com.oneinstep.myrpc.core.exception.RpcException;
+import com.oneinstep.myrpc.core.trace.WireTraceHandler;
+import com.oneinstep.myrpc.core.transport.HeartbeatHandler;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.timeout.IdleStateHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RPC client
@@ -24,78 +35,159 @@ import java.util.concurrent.ExecutionException;
 @Slf4j
 public class RpcClient {
 
-    private final String host;
-    private final int port;
-    private EventLoopGroup group;
-    private Channel channel;
+    /**
+     * host:port, or unix: followed by the socket path, used in the logs and the errors
+     */
+    private final String address;
+    private final SocketAddress remoteAddress;
+    /**
+     * TCP 或 Unix domain socket 的 Bootstrap 模板
+     */
+    private final Bootstrap bootstrap;
+    /**
+     * 序列化方式、Bootstrap 等所有连接共享的对象
+     */
+    private final RpcClientContext context;
+    /**
+     * 这个连接上等待响应的请求
+     */
+    private final PendingRequestTable pendingRequests = new PendingRequestTable();
+    /**
+     * 这个连接上没有结束的流式调用
+     */
+    private final Map<Long, ClientStream> streams = new ConcurrentHashMap<>();
+    /**
+     * 对端不认识的服务 ID，这些服务的请求改为携带接口名、方法名和参数类型
+     */
+    private final Set<Integer> rejectedServiceIds = ConcurrentHashMap.newKeySet();
+    private volatile Channel channel;
+    /**
+     * 最近一次连接尝试的结果，连接中的调用方在这里等待，不阻塞其它服务端的调用
+     */
+    private volatile CompletableFuture<RpcClient> connectFuture;
+    /**
+     * 连续重连失败的次数
+     */
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    /**
+     * 调用了 close()，不再重连
+     */
+    private volatile boolean closed;
+    /**
+     * 重连次数用尽，等待 RpcClientManager 淘汰
+     */
+    private volatile boolean dead;
 
-    public RpcClient(String host, int port) {
-        this.host = host;
-        this.port = port;
-        initialize();
+    public RpcClient(String host, int port, RpcClientContext context) {
+        // 未解析的地址在每次连接时由 Bootstrap 解析
+        this(host + ":" + port, InetSocketAddress.createUnresolved(host, port), context.getBootstrap(), context);
     }
 
     /**
-     * 初始化 Netty 客户端
+     * Connect to the Unix domain socket of a provider on the same host, needs the epoll transport
+     *
+     * @param socketPath path of the socket
+     * @param context    shared client context
      */
-    private void initialize() {
-        group = new NioEventLoopGroup();
-        try {
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(group)
-                    .channel(NioSocketChannel.class)
-                    .option(ChannelOption.TCP_NODELAY, true)
-                    .handler(new ChannelInitializer<>() {
-                        @Override
-                        protected void initChannel(Channel ch) {
-                            ch.pipeline()
-                                    // 添加 LengthFieldBasedFrameDecoder 解码器，处理半包消息
-                                    .addLast(new LengthFieldBasedFrameDecoder(
-                                            Integer.MAX_VALUE, // max frame length
-                                            0,                 // length field offset
-                                            4,                 // length field length
-                                            0,                 // length adjustment
-                                            4                  // initial bytes to strip
-                                    ))
-                                    // 添加日志处理器
-                                    .addLast(new LoggingHandler(LogLevel.INFO))
-                                    // 添加编码器
-                                    .addLast(new RpcEncoder(RpcRequest.class))
-                                    // 添加解码器
-                                    .addLast(new RpcDecoder(RpcResponse.class))
-                                    // 添加客户端处理器
-                                    .addLast(new RpcClientHandler());
-                        }
-                    });
-
-            // 连接服务器
-            ChannelFuture future = bootstrap.connect(host, port).sync();
-            channel = future.channel();
-            log.info("Connected to {}:{}", host, port);
-        } catch (InterruptedException e) {
-            log.error("Failed to connect to {}:{}", host, port, e);
-            Thread.currentThread().interrupt();
+    public RpcClient(String socketPath, RpcClientContext context) {
+        this("unix:" + socketPath, new DomainSocketAddress(socketPath), context.getDomainSocketBootstrap(), context);
+    }
+
+    private RpcClient(String address, SocketAddress remoteAddress, Bootstrap bootstrap, RpcClientContext context) {
+        this.address = address;
+        this.remoteAddress = remoteAddress;
+        this.bootstrap = bootstrap;
+        this.context = context;
+        // 不等待连接结果，连接超时由 Bootstrap 的 CONNECT_TIMEOUT_MILLIS 保证，失败时安排重连
+        connect();
+    }
+
+    /**
+     * 异步建立连接，连接断开或者连接失败时按指数退避重连
+     */
+    private void connect() {
+        CompletableFuture<RpcClient> attempt = new CompletableFuture<>();
+        connectFuture = attempt;
+        ChannelFuture future = bootstrap.clone()
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        // 合并多个调用线程发出的请求的 flush
+                        context.getNettyTransport().addFlushConsolidation(ch.pipeline());
+                        ch.pipeline()
+                                // 空闲检测：写空闲时发送心跳，读超时认为连接已断开
+                                .addLast(new IdleStateHandler(context.getHeartbeatTimeoutMs(),
+                                        context.getHeartbeatIntervalMs(), 0, TimeUnit.MILLISECONDS))
+                                // 按消息头中的长度拆帧，处理半包消息
+                                .addLast(new RpcFrameDecoder(context.getCodecConfig().getMaxFrameSize()))
+                                // 添加编码器
+                                .addLast(new RpcEncoder(context.getSerializer(), context.getCodecConfig()))
+                                // 添加解码器
+                                .addLast(new RpcDecoder(context.getCodecConfig()))
+                                // 发送心跳，消费心跳响应
+                                .addLast(HeartbeatHandler.CLIENT)
+                                // 采样追踪编解码后的消息
+                                .addLast(new WireTraceHandler(context.getWireTrace()))
+                                // 添加客户端处理器
+                                .addLast(new RpcClientHandler(pendingRequests, streams));
+                    }
+                })
+                // 连接服务器
+                .connect(remoteAddress);
+        future.addListener((ChannelFutureListener) f -> {
+            if (!f.isSuccess()) {
+                log.warn("Failed to connect to {}: {}", address, f.cause().toString());
+                attempt.completeExceptionally(new RpcConnectException("Failed to connect to " + address, f.cause()));
+                scheduleReconnect();
+                return;
+            }
+            channel = f.channel();
+            reconnectAttempts.set(0);
+            log.info("Connected to {}", address);
+            // 连接断开后重连，RpcClientHandler 已经让等待中的请求失败
+            f.channel().closeFuture().addListener(closeFuture -> scheduleReconnect());
+            if (closed) {
+                f.channel().close();
+            }
+            attempt.complete(this);
+        });
+    }
+
+    private void scheduleReconnect() {
+        if (closed) {
+            return;
+        }
+        int attempt = reconnectAttempts.incrementAndGet();
+        if (attempt > context.getReconnectMaxAttempts()) {
+            dead = true;
+            log.warn("Give up reconnecting to {} after {} attempts", address, attempt - 1);
+            return;
         }
+        long delay = Math.min(context.getReconnectMaxDelayMs(),
+                context.getReconnectInitialDelayMs() << Math.min(attempt - 1, 20));
+        // 加入抖动，避免大量客户端同时重连
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        log.info("Reconnect to {} in {} ms, attempt {}", address, delay, attempt);
+        context.getBootstrap().config().group().schedule(() -> {
+            if (!closed) {
+                connect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * 发送 RPC 请求
+     * 发送 RPC 请求，阻塞等待响应
      *
-     * @param request RPC 请求
+     * @param request   RPC 请求
+     * @param timeoutMs 超时时间，毫秒
      * @return RPC 响应
      * @throws InterruptedException exception
      */
-    public RpcResponse send(RpcRequest request) throws InterruptedException {
-        // 将 requestId 和响应对象的映射关系存入 CompletableFuture
-        CompletableFuture<RpcResponse> completableFuture = RpcClientHandler.addResponse(request.getRequestId());
-        // 写入 RPC 请求数据
-        channel.writeAndFlush(request).sync();
-        log.info("Sent RPC request to {}:{}", host, port);
-        // 从 RpcClientHandler 获取响应
+    public RpcResponse send(RpcRequest request, long timeoutMs) throws InterruptedException {
+        // 从 RpcClientHandler 获取响应，超时由 RpcClientHandler 保证
         try {
-            return completableFuture.get();
+            return sendAsync(request, timeoutMs).get();
         } catch (ExecutionException e) {
-            log.error("RPC request failed", e);
             if ((e.getCause() instanceof RpcException rpcException)) {
                 throw rpcException;
             } else if (e.getCause() instanceof RuntimeException runtimeException) {
@@ -103,22 +195,141 @@ public class RpcClient {
             } else {
                 throw new RpcException("RPC request failed, cause: " + e.getCause().getMessage());
             }
-        } finally {
-            // 移除 requestId 和响应对象的映射关系
-            RpcClientHandler.removeResponse(request.getRequestId());
         }
     }
 
     /**
-     * 关闭连接
+     * 异步发送 RPC 请求，不阻塞调用线程
+     * 返回的 CompletableFuture 在 RpcClientHandler 收到响应、写入失败、连接断开或者超时时完成
+     *
+     * @param request   RPC 请求
+     * @param timeoutMs 超时时间，毫秒
+     * @return RPC 响应的 CompletableFuture
      */
-    public void close() {
-        if (channel != null) {
-            channel.close();
+    public CompletableFuture<RpcResponse> sendAsync(RpcRequest request, long timeoutMs) {
+        Channel ch = channel;
+        // 正在重连时直接失败，由调用方换一个服务端
+        if (ch == null || !ch.isActive()) {
+            return CompletableFuture.failedFuture(new RpcConnectException("Connection to " + address + " is not available"));
+        }
+        // 将 requestId 和响应对象的映射关系存入 CompletableFuture
+        CompletableFuture<RpcResponse> completableFuture = pendingRequests.add(request.getRequestId(), timeoutMs);
+        // 写入 RPC 请求数据，写入失败时直接让调用失败
+        ch.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                // 移除 requestId 和响应对象的映射关系
+                pendingRequests.remove(request.getRequestId());
+                // 编码器拒绝的请求（例如超过大小限制）直接返回原因
+                if (future.cause() instanceof EncoderException && future.cause().getCause() instanceof RpcException cause) {
+                    completableFuture.completeExceptionally(cause);
+                    return;
+                }
+                completableFuture.completeExceptionally(
+                        new RpcException("Failed to send RPC request to " + address, future.cause()));
+            }
+        });
+        return completableFuture;
+    }
+
+    /**
+     * 发起流式调用，服务端按照授予的额度逐个发送元素
+     *
+     * @param request   RPC 请求
+     * @param window    缓冲的元素个数上限，也是首次授予的额度
+     * @param timeoutMs 等待每个元素的超时时间，毫秒
+     * @return 流，结束之前需要消费完或者关闭
+     */
+    public ClientStream openStream(RpcRequest request, int window, long timeoutMs) {
+        Channel ch = channel;
+        if (ch == null || !ch.isActive()) {
+            throw new RpcConnectException("Connection to " + address + " is not available");
         }
-        if (group != null) {
-            group.shutdownGracefully();
+        long requestId = request.getRequestId();
+        ClientStream stream = new ClientStream(requestId, ch, window, timeoutMs, () -> streams.remove(requestId));
+        streams.put(requestId, stream);
+        ch.write(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                if (future.cause() instanceof EncoderException && future.cause().getCause() instanceof RpcException cause) {
+                    stream.fail(cause);
+                    return;
+                }
+                stream.fail(new RpcException("Failed to send RPC request to " + address, future.cause()));
+            }
+        });
+        // 首次的额度紧跟在请求之后，服务端收到额度之前不发送元素
+        ch.writeAndFlush(WindowUpdate.grant(requestId, window), ch.voidPromise());
+        return stream;
+    }
+
+    /**
+     * 对端是否接受这个服务 ID
+     *
+     * @param serviceId service id
+     * @return false if the peer has rejected the id before
+     */
+    public boolean acceptsServiceId(int serviceId) {
+        return !rejectedServiceIds.contains(serviceId);
+    }
+
+    /**
+     * 记录对端不认识的服务 ID
+     *
+     * @param serviceId service id
+     */
+    public void rejectServiceId(int serviceId) {
+        if (rejectedServiceIds.add(serviceId)) {
+            log.warn("{} does not know service id {}, fall back to method names", address, serviceId);
+        }
+    }
+
+    /**
+     * 等待响应的请求数
+     *
+     * @return pending request count
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * 连接是否可用
+     *
+     * @return true if connected
+     */
+    public boolean isActive() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    /**
+     * 连接可用时立即完成，正在连接时在连接成功或者失败时完成，
+     * 等待重连的期间返回上一次连接尝试的结果，调用方可以直接失败
+     *
+     * @return future of the connect attempt
+     */
+    public CompletableFuture<RpcClient> whenConnected() {
+        return isActive() ? CompletableFuture.completedFuture(this) : connectFuture;
+    }
+
+    /**
+     * 是否已经放弃重连或者已经关闭
+     *
+     * @return true if the client can not be used any more
+     */
+    public boolean isDead() {
+        return dead || closed;
+    }
+
+    /**
+     * 关闭连接，不再重连
+     */
+    public void close() {
+        closed = true;
+        connectFuture.completeExceptionally(new RpcConnectException("Connection to " + address + " closed"));
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
         }
-        log.info("Connection to {}:{} closed", host, port);
+        log.info("Connection to {} closed", address);
     }
 }
@@ -0,0 +1,63 @@
+package com.oneinstep.myrpc.core.client;
+
+import com.oneinstep.myrpc.core.codec.CodecConfig;
+import com.oneinstep.myrpc.core.serialize.Serializer;
+import com.oneinstep.myrpc.core.trace.WireTrace;
+import com.oneinstep.myrpc.core.transport.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * What the RPC clients of one RpcClientManager share
+ */
+@Getter
+@Builder
+public class RpcClientContext {
+
+    /**
+     * 请求使用的序列化方式
+     */
+    private final Serializer serializer;
+    /**
+     * 已设置 EventLoopGroup、channel 类型和 socket 参数的 Bootstrap，每个连接 clone 后设置自己的 handler
+     */
+    private final Bootstrap bootstrap;
+    /**
+     * Unix domain socket 连接使用的 Bootstrap，transport 不是 epoll 时为 null
+     */
+    private final Bootstrap domainSocketBootstrap;
+    /**
+     * Frame size limits and compression
+     */
+    private final CodecConfig codecConfig;
+    /**
+     * Netty transport, adds the flush consolidation to the pipeline
+     */
+    private final NettyTransport nettyTransport;
+    /**
+     * Sampled wire trace
+     */
+    private final WireTrace wireTrace;
+    /**
+     * 连接空闲这么久没有写数据时发送心跳
+     */
+    private final long heartbeatIntervalMs;
+    /**
+     * 这么久没有收到任何数据（包括心跳响应）时认为连接已断开
+     */
+    private final long heartbeatTimeoutMs;
+    /**
+     * 第一次重连的延迟，之后每次翻倍
+     */
+    private final long reconnectInitialDelayMs;
+    /**
+     * 重连延迟的上限
+     */
+    private final long reconnectMaxDelayMs;
+    /**
+     * 连续重连失败这么多次后放弃，客户端被 RpcClientManager 淘汰
+     */
+    private final int reconnectMaxAttempts;
+
+}
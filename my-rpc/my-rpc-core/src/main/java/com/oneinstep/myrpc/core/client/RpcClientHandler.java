@@ -1,77 +1,117 @@
 package com.oneinstep.myrpc.core.client;
 
+import com.oneinstep.myrpc.core.codec.RpcProtocol;
 import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
+import com.oneinstep.myrpc.core.exception.FrameTooLargeException;
 import com.oneinstep.myrpc.core.exception.RpcException;
+import com.oneinstep.myrpc.core.exception.ServerBusyException;
+import com.oneinstep.myrpc.core.exception.ServiceInvocationException;
+import com.oneinstep.myrpc.core.exception.UnknownMethodIdException;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 @Slf4j
 public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
 
     /**
-     * Store the response of the request
+     * The pending requests of this connection
      */
-    private static final ConcurrentMap<String, CompletableFuture<RpcResponse>> responseMap = new ConcurrentHashMap<>();
+    private final PendingRequestTable pendingRequests;
+    /**
+     * The open streams of this connection, by request id
+     */
+    private final Map<Long, ClientStream> streams;
+
+    public RpcClientHandler(PendingRequestTable pendingRequests, Map<Long, ClientStream> streams) {
+        this.pendingRequests = pendingRequests;
+        this.streams = streams;
+    }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RpcResponse response) {
         try {
-
-            // 检查响应的 requestId
-            if (response.getRequestId() == null) {
-                log.warn("Received response with null requestId: {}", response);
-                return;
-            }
-
-            // 获取与 requestId 对应的 CompletableFuture
-            CompletableFuture<RpcResponse> future = responseMap.get(response.getRequestId());
+            // 获取并移除与 requestId 对应的 CompletableFuture
+            CompletableFuture<RpcResponse> future = pendingRequests.remove(response.getRequestId());
             if (future == null) {
-                log.warn("No pending requests found for requestId: {}", response.getRequestId());
+                // 流式调用的元素和结束响应
+                ClientStream stream = streams.get(response.getRequestId());
+                if (stream != null) {
+                    stream.onResponse(response);
+                    return;
+                }
+                // 流已经关闭或者超时，让服务端停止发送
+                if (response.isStreamItem()) {
+                    ctx.writeAndFlush(WindowUpdate.cancel(response.getRequestId()), ctx.voidPromise());
+                }
+                // 请求已经超时，迟到的响应直接丢弃
+                log.debug("No pending requests found for requestId: {}", response.getRequestId());
                 return;
             }
 
-            String error = response.getError();
-            // 如果错误信息不为空，说明调用过程中出现了错误
-            if (error != null && !error.isEmpty()) {
-                future.completeExceptionally(new RpcException(error));
+            RpcException error = toException(response);
+            if (error != null) {
+                future.completeExceptionally(error);
             }
             // 否则，说明调用过程正常，将结果返回给调用方
             else {
                 future.complete(response);
             }
-            log.info("Stored response for requestId: {}", response.getRequestId());
         } catch (Exception e) {
-            log.error("Failed to parse and store response: {}", response, e);
+            log.error("Failed to complete the request: {}", response.getRequestId(), e);
+        }
+    }
+
+    /**
+     * Map the status of the response to the exception of the call
+     *
+     * @param response response
+     * @return exception, null if the call succeeded
+     */
+    static RpcException toException(RpcResponse response) {
+        // 服务端繁忙，请求没有被执行
+        if (response.getStatus() == RpcProtocol.STATUS_BUSY) {
+            return new ServerBusyException(response.getError());
         }
+        // 服务端不认识请求中的服务 ID / 方法 ID，请求没有被执行
+        if (response.getStatus() == RpcProtocol.STATUS_UNKNOWN_METHOD) {
+            return new UnknownMethodIdException(response.getError());
+        }
+        // 请求或者响应超过了大小限制
+        if (response.getStatus() == RpcProtocol.STATUS_TOO_LARGE) {
+            return new FrameTooLargeException(response.getError());
+        }
+        // 如果响应状态不是成功，说明调用过程中出现了错误
+        if (response.getStatus() != RpcProtocol.STATUS_OK) {
+            return new ServiceInvocationException(response.getError());
+        }
+        return null;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开时，让这个连接上所有等待中的请求立即失败
+        failAll(new RpcException("Connection to " + ctx.channel().remoteAddress() + " closed"));
+        super.channelInactive(ctx);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        // 发生异常时，关闭 ChannelHandlerContext
+        // 发生异常时，让等待中的请求失败并关闭 ChannelHandlerContext
         log.error("Client caught exception", cause);
+        failAll(new RpcException("Connection to " + ctx.channel().remoteAddress() + " failed", cause));
         ctx.close();
     }
 
-    /**
-     * 添加请求
-     * @param requestId 请求 ID
-     * @return CompletableFuture
-     */
-    public static CompletableFuture<RpcResponse> addResponse(String requestId) {
-        return responseMap.computeIfAbsent(requestId, k -> new CompletableFuture<>());
-    }
-
-    /**
-     * 移除请求
-     * @param requestId 请求 ID
-     */
-    public static void removeResponse(String requestId) {
-        responseMap.remove(requestId);
+    private void failAll(RpcException cause) {
+        pendingRequests.failAll(cause);
+        for (ClientStream stream : streams.values()) {
+            stream.fail(cause);
+        }
     }
 
-}
\ No newline at end of file
+}
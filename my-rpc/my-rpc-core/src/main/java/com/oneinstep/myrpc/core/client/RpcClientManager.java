@@ -1,39 +1,341 @@
 package com.oneinstep.myrpc.core.client;
 
+import com.oneinstep.myrpc.core.codec.CodecConfig;
+import com.oneinstep.myrpc.core.exception.RpcConnectException;
+import com.oneinstep.myrpc.core.exception.RpcException;
+import com.oneinstep.myrpc.core.registry.Endpoint;
+import com.oneinstep.myrpc.core.serialize.SerializerFactory;
+import com.oneinstep.myrpc.core.trace.WireTrace;
+import com.oneinstep.myrpc.core.transport.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.NetUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * RPC client manager
+ * 每个服务端地址维护一个连接池，所有连接共享同一个 EventLoopGroup
+ * <p>
+ * 连接池的创建不等待连接建立，调用方在连接池的连接 future 上等待，
+ * 所以一个无法连接的服务端只会让发往它的调用等待连接超时，不影响其它服务端的调用。
+ * </p>
+ * <p>
+ * 服务端发布了 Unix domain socket 并且和消费者在同一台主机上时，连接这个 socket 而不是 TCP 端口，
+ * 省去 TCP/IP 协议栈的开销。socket 文件不存在（服务端不在同一个文件系统中或已经停止）时仍然使用 TCP。
+ * </p>
  */
+@Slf4j
 @Component
 public class RpcClientManager implements DisposableBean {
 
     /**
-     * RPC 客户端缓存
+     * 连接池缓存，key 是 host:port
      */
-    private final ConcurrentMap<String, RpcClient> clientMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RpcClientPool> poolMap = new ConcurrentHashMap<>();
 
     /**
-     * 获取客户端
+     * Netty transport and socket options
+     */
+    @Resource
+    private NettyTransport nettyTransport;
+
+    /**
+     * Sampled wire trace
+     */
+    @Resource
+    private WireTrace wireTrace;
+
+    /**
+     * Frame size limits and compression
+     */
+    @Resource
+    private CodecConfig codecConfig;
+
+    /**
+     * 请求使用的序列化方式，对端不支持时可以配置为 jdk
+     */
+    @Value("${my-rpc.serializer:binary}")
+    private String serializerName;
+
+    /**
+     * 每个服务端地址的连接数
+     */
+    @Value("${my-rpc.client.connections:1}")
+    private int connections;
+
+    /**
+     * 连接的选择方式：round-robin / least-pending
+     */
+    @Value("${my-rpc.client.select:round-robin}")
+    private String select;
+
+    /**
+     * IO 线程数，0 表示使用 Netty 的默认值
+     */
+    @Value("${my-rpc.client.io-threads:0}")
+    private int ioThreads;
+
+    /**
+     * 建立连接的超时时间，也是调用方等待连接的最长时间
+     */
+    @Value("${my-rpc.client.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    /**
+     * 服务端在同一台主机上时优先使用它发布的 Unix domain socket
+     */
+    @Value("${my-rpc.client.prefer-unix-socket:true}")
+    private boolean preferUnixSocket;
+
+    /**
+     * host -> 是否是本机地址，每个主机只检查一次
+     */
+    private final ConcurrentMap<String, Boolean> localHosts = new ConcurrentHashMap<>();
+
+    /**
+     * 心跳间隔，连接空闲这么久没有写数据时发送心跳
+     */
+    @Value("${my-rpc.heartbeat.interval-ms:10000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * 心跳超时，这么久没有收到任何数据时关闭连接并重连
+     */
+    @Value("${my-rpc.heartbeat.timeout-ms:30000}")
+    private long heartbeatTimeoutMs;
+
+    /**
+     * 第一次重连的延迟，之后每次翻倍直到上限
+     */
+    @Value("${my-rpc.client.reconnect-initial-delay-ms:100}")
+    private long reconnectInitialDelayMs;
+
+    @Value("${my-rpc.client.reconnect-max-delay-ms:10000}")
+    private long reconnectMaxDelayMs;
+
+    /**
+     * 连续重连失败这么多次后淘汰这个客户端
+     */
+    @Value("${my-rpc.client.reconnect-max-attempts:10}")
+    private int reconnectMaxAttempts;
+
+    /**
+     * 所有连接共享的 EventLoopGroup
+     */
+    private EventLoopGroup group;
+
+    /**
+     * 所有连接共享的序列化方式和 Bootstrap 模板
+     */
+    private RpcClientContext context;
+
+    @PostConstruct
+    public void init() {
+        group = nettyTransport.newEventLoopGroup(ioThreads, "my-rpc-client");
+        Bootstrap bootstrap = new Bootstrap().group(group);
+        nettyTransport.configure(bootstrap);
+        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+        Bootstrap domainSocketBootstrap = null;
+        if (preferUnixSocket && nettyTransport.isDomainSocketAvailable()) {
+            domainSocketBootstrap = new Bootstrap().group(group);
+            nettyTransport.configureDomainSocket(domainSocketBootstrap);
+            domainSocketBootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+        }
+        context = RpcClientContext.builder()
+                .serializer(SerializerFactory.getSerializer(serializerName))
+                .bootstrap(bootstrap)
+                .domainSocketBootstrap(domainSocketBootstrap)
+                .codecConfig(codecConfig)
+                .nettyTransport(nettyTransport)
+                .wireTrace(wireTrace)
+                .heartbeatIntervalMs(heartbeatIntervalMs)
+                .heartbeatTimeoutMs(heartbeatTimeoutMs)
+                .reconnectInitialDelayMs(reconnectInitialDelayMs)
+                .reconnectMaxDelayMs(reconnectMaxDelayMs)
+                .reconnectMaxAttempts(reconnectMaxAttempts)
+                .build();
+    }
+
+    /**
+     * 获取服务端的客户端，服务端在本机并且发布了 Unix domain socket 时使用 socket 的连接池
+     *
+     * @param endpoint 服务端
+     * @return RPC 客户端
+     */
+    public RpcClient getClient(Endpoint endpoint) {
+        String socketPath = localSocketPath(endpoint);
+        if (socketPath == null) {
+            return getClient(endpoint.getHost(), endpoint.getPort());
+        }
+        return getClient(getPool("unix:" + socketPath, () -> new RpcClient(socketPath, context)));
+    }
+
+    /**
+     * 获取客户端，从该地址的连接池中选择一个连接
+     * 连接池还没有可用的连接时最多等待 connect-timeout-ms，正在等待重连时直接失败
      *
      * @param host 主机
      * @param port 端口
      * @return RPC 客户端
      */
     public RpcClient getClient(String host, int port) {
-        String key = host + ":" + port;
-        return clientMap.computeIfAbsent(key, k -> new RpcClient(host, port));
+        return getClient(getPool(host, port));
+    }
+
+    private RpcClient getClient(RpcClientPool pool) {
+        RpcClient client = pool.select();
+        if (client.isActive()) {
+            return client;
+        }
+        try {
+            client = pool.whenConnected().get(connectTimeoutMs, TimeUnit.MILLISECONDS).select();
+        } catch (TimeoutException e) {
+            throw connectFailure(pool, e);
+        } catch (ExecutionException e) {
+            throw connectFailure(pool, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Interrupted while connecting to " + pool.getAddress(), e);
+        }
+        if (!client.isActive()) {
+            throw new RpcConnectException("Connection to " + pool.getAddress() + " is not available");
+        }
+        return client;
+    }
+
+    /**
+     * 异步获取服务端的客户端，不阻塞调用线程，Unix domain socket 的选择和 {@link #getClient(Endpoint)} 相同
+     *
+     * @param endpoint 服务端
+     * @return 有可用连接时已完成的 future，否则在连接建立后完成，连接失败或者超时时以 RpcConnectException 异常完成
+     */
+    public CompletableFuture<RpcClient> getClientAsync(Endpoint endpoint) {
+        String socketPath = localSocketPath(endpoint);
+        if (socketPath == null) {
+            return getClientAsync(endpoint.getHost(), endpoint.getPort());
+        }
+        return getClientAsync(getPool("unix:" + socketPath, () -> new RpcClient(socketPath, context)));
+    }
+
+    /**
+     * 异步获取客户端，不阻塞调用线程
+     *
+     * @param host 主机
+     * @param port 端口
+     * @return 连接建立后完成的 RPC 客户端 future，连接失败或者超时时异常完成
+     */
+    public CompletableFuture<RpcClient> getClientAsync(String host, int port) {
+        return getClientAsync(getPool(host, port));
+    }
+
+    private CompletableFuture<RpcClient> getClientAsync(RpcClientPool pool) {
+        RpcClient client = pool.select();
+        if (client.isActive()) {
+            return CompletableFuture.completedFuture(client);
+        }
+        // 连接建立后的处理在 IO 线程上执行，不能阻塞
+        return pool.whenConnected()
+                .orTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((connected, throwable) -> {
+                    if (throwable != null) {
+                        throw connectFailure(pool, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                    }
+                    RpcClient selected = connected.select();
+                    if (!selected.isActive()) {
+                        throw new RpcConnectException("Connection to " + pool.getAddress() + " is not available");
+                    }
+                    return selected;
+                });
+    }
+
+    private RpcException connectFailure(RpcClientPool pool, Throwable cause) {
+        if (cause instanceof TimeoutException) {
+            return new RpcConnectException("Connect to " + pool.getAddress() + " timed out after " + connectTimeoutMs + " ms");
+        }
+        if (cause instanceof RpcException rpcException) {
+            return rpcException;
+        }
+        return new RpcConnectException("Failed to connect to " + pool.getAddress(), cause);
+    }
+
+    /**
+     * 获取该地址的连接池，所有连接都已放弃重连的连接池被淘汰，重新建立连接
+     * 连接池的创建只发起连接，不在 computeIfAbsent 中等待连接结果
+     */
+    private RpcClientPool getPool(String host, int port) {
+        return getPool(host + ":" + port, () -> new RpcClient(host, port, context));
+    }
+
+    private RpcClientPool getPool(String key, Supplier<RpcClient> clientFactory) {
+        RpcClientPool pool = poolMap.get(key);
+        if (pool != null && pool.isDead()) {
+            if (poolMap.remove(key, pool)) {
+                log.info("Evict the dead connections to {}", key);
+                pool.close();
+            }
+            pool = null;
+        }
+        if (pool == null) {
+            pool = poolMap.computeIfAbsent(key, k -> new RpcClientPool(k, connections, "least-pending".equals(select),
+                    clientFactory));
+        }
+        return pool;
+    }
+
+    /**
+     * 服务端可以通过 Unix domain socket 连接时返回 socket 路径，否则返回 null
+     * 主机地址相同还不够，容器可能共享网络但不共享文件系统，所以还要求 socket 文件存在
+     */
+    private String localSocketPath(Endpoint endpoint) {
+        String socketPath = endpoint.getSocketPath();
+        if (socketPath == null || context.getDomainSocketBootstrap() == null
+                || !localHosts.computeIfAbsent(endpoint.getHost(), RpcClientManager::isLocalHost)) {
+            return null;
+        }
+        return Files.exists(Path.of(socketPath)) ? socketPath : null;
+    }
+
+    /**
+     * 只比较 IP 地址，不做 DNS 解析：这里在发起调用、重试和对冲的线程上执行，可能是 IO 线程
+     */
+    private static boolean isLocalHost(String host) {
+        if ("localhost".equalsIgnoreCase(host)) {
+            return true;
+        }
+        byte[] bytes = NetUtil.createByteArrayFromIpAddressString(host);
+        if (bytes == null) {
+            return false;
+        }
+        try {
+            InetAddress address = InetAddress.getByAddress(bytes);
+            return address.isLoopbackAddress() || address.isAnyLocalAddress()
+                    || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            log.debug("Failed to check {}: {}", host, e.toString());
+            return false;
+        }
     }
 
     /**
      * 关闭所有客户端
      */
     public void closeAllClients() {
-        clientMap.values().forEach(RpcClient::close);
+        poolMap.values().forEach(RpcClientPool::close);
+        poolMap.clear();
     }
 
     /**
@@ -42,6 +344,9 @@ public class RpcClientManager implements DisposableBean {
     @Override
     public void destroy() {
         closeAllClients();
+        if (group != null) {
+            group.shutdownGracefully();
+        }
     }
 
 }
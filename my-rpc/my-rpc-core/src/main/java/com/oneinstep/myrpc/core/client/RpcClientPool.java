@@ -0,0 +1,130 @@
+package com.oneinstep.myrpc.core.client;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of connections to one provider endpoint
+ */
+public class RpcClientPool {
+
+    @Getter
+    private final String address;
+
+    private final RpcClient[] clients;
+
+    /**
+     * true: pick the connection with the least pending requests, false: round-robin
+     */
+    private final boolean leastPending;
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    public RpcClientPool(String address, int size, boolean leastPending, Supplier<RpcClient> clientFactory) {
+        this.address = address;
+        this.leastPending = leastPending;
+        this.clients = new RpcClient[Math.max(1, size)];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = clientFactory.get();
+        }
+    }
+
+    /**
+     * Select a connection
+     *
+     * @return RPC client
+     */
+    public RpcClient select() {
+        if (clients.length == 1) {
+            return clients[0];
+        }
+        if (!leastPending) {
+            // skip the connections that are reconnecting
+            int start = index.getAndIncrement() & Integer.MAX_VALUE;
+            for (int i = 0; i < clients.length; i++) {
+                RpcClient client = clients[(start + i) % clients.length];
+                if (client.isActive()) {
+                    return client;
+                }
+            }
+            return clients[start % clients.length];
+        }
+        // start from a rotating position so that the ties are spread over the connections
+        int start = (index.getAndIncrement() & Integer.MAX_VALUE) % clients.length;
+        RpcClient selected = clients[start];
+        int minPending = selected.isActive() ? selected.getPendingCount() : Integer.MAX_VALUE;
+        for (int i = 1; i < clients.length && minPending > 0; i++) {
+            RpcClient client = clients[(start + i) % clients.length];
+            int pending = client.getPendingCount();
+            if (pending < minPending && client.isActive()) {
+                selected = client;
+                minPending = pending;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Completes when one of the connections is connected,
+     * fails when the current connect attempts of all the connections have failed
+     *
+     * @return future of the pool
+     */
+    public CompletableFuture<RpcClientPool> whenConnected() {
+        CompletableFuture<RpcClientPool> future = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(clients.length);
+        for (RpcClient client : clients) {
+            client.whenConnected().whenComplete((connected, throwable) -> {
+                if (throwable == null) {
+                    future.complete(this);
+                } else if (remaining.decrementAndGet() == 0) {
+                    future.completeExceptionally(throwable);
+                }
+            });
+            if (future.isDone()) {
+                break;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Whether all the connections have given up reconnecting
+     *
+     * @return true if the pool should be evicted
+     */
+    public boolean isDead() {
+        for (RpcClient client : clients) {
+            if (!client.isDead()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of pending requests of all the connections
+     *
+     * @return pending request count
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (RpcClient client : clients) {
+            pending += client.getPendingCount();
+        }
+        return pending;
+    }
+
+    /**
+     * Close all the connections
+     */
+    public void close() {
+        for (RpcClient client : clients) {
+            client.close();
+        }
+    }
+
+}
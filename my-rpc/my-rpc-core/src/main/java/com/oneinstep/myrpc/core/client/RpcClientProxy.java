@@ -1,6 +1,7 @@
 package com.oneinstep.myrpc.core.client;
 
 import com.oneinstep.myrpc.core.annotation.RpcReference;
+import com.oneinstep.myrpc.core.loadbalance.LoadBalancerFactory;
 import jakarta.annotation.Resource;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
@@ -40,7 +41,9 @@ public class RpcClientProxy implements BeanPostProcessor {
                     version = "DEFAULT";
                 }
                 // Create a proxy for the field
-                Object proxy = rpcServiceProxyFactory.createProxy(field.getType(), version);
+                Object proxy = rpcServiceProxyFactory.createProxy(field.getType(), version, annotation.timeoutMs(),
+                        LoadBalancerFactory.create(annotation.loadBalance(), annotation.hashArgument()),
+                        annotation.cluster(), annotation.retries());
                 // Set the field to be accessible
                 field.setAccessible(true);
                 // Set the proxy object to the field
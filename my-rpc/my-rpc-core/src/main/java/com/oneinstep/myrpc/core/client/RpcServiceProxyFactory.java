@@ -1,75 +1,417 @@
 package com.oneinstep.myrpc.core.client;
 
+import com.oneinstep.myrpc.core.annotation.RpcMethod;
+import com.oneinstep.myrpc.core.cluster.*;
 import com.oneinstep.myrpc.core.dto.RpcRequest;
 import com.oneinstep.myrpc.core.dto.RpcResponse;
 import com.oneinstep.myrpc.core.exception.RpcException;
-import com.oneinstep.myrpc.core.exception.ServiceNotFoundException;
+import com.oneinstep.myrpc.core.exception.UnknownMethodIdException;
+import com.oneinstep.myrpc.core.governance.EndpointGuard;
+import com.oneinstep.myrpc.core.governance.EndpointGuards;
+import com.oneinstep.myrpc.core.loadbalance.EndpointStats;
+import com.oneinstep.myrpc.core.local.LocalServices;
+import com.oneinstep.myrpc.core.loadbalance.LoadBalancer;
+import com.oneinstep.myrpc.core.loadbalance.RandomLoadBalancer;
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import com.oneinstep.myrpc.core.registry.Endpoint;
 import com.oneinstep.myrpc.core.registry.ServiceRegistry;
+import com.oneinstep.myrpc.core.server.MethodInvoker;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * RPC service proxy
  * Create a proxy for the RPC service
+ * <p>
+ * Methods returning {@link CompletableFuture} are invoked asynchronously:
+ * the proxy returns immediately and the future is completed by the response.
+ * The discovery of the providers is part of the future chain, the caller never waits for the registry.
+ * </p>
+ * <p>
+ * Methods returning an {@link java.util.Iterator} or a {@link Stream} are server-streaming:
+ * the proxy returns a {@link ClientStream} and the provider sends the elements as they are consumed.
+ * </p>
+ * <p>
+ * A service exported by the server of the same JVM is invoked in process, see {@link LocalServices}.
+ * </p>
  */
 @Slf4j
 @Component
 public class RpcServiceProxyFactory {
 
+    /**
+     * Request id generator, the id is only required to be unique within the process
+     */
+    private static final AtomicLong REQUEST_ID_GENERATOR = new AtomicLong();
+
     @Resource
     private ServiceRegistry serviceRegistry;
     @Resource
     private RpcClientManager rpcClientManager;
+    @Resource
+    private EndpointGuards endpointGuards;
+    @Resource
+    private LocalServices localServices;
+
+    /**
+     * 重试和对冲请求占调用量的比例上限
+     */
+    @Value("${my-rpc.cluster.retry-budget-ratio:0.1}")
+    private double retryBudgetRatio;
+
+    /**
+     * 每秒总是允许的重试次数，调用量很小的引用也可以重试
+     */
+    @Value("${my-rpc.cluster.min-retries-per-second:10}")
+    private int minRetriesPerSecond;
+
+    /**
+     * 流式调用在客户端缓冲的元素个数上限
+     */
+    @Value("${my-rpc.client.stream-window:64}")
+    private int streamWindow;
 
+    /**
+     * Create a proxy for the remote service
+     *
+     * @param interfaceClass service interface
+     * @param version        service version
+     * @param timeoutMs      default timeout of the calls in milliseconds
+     * @param <T>            service type
+     * @return proxy
+     */
+    public <T> T createProxy(Class<T> interfaceClass, String version, long timeoutMs) {
+        return createProxy(interfaceClass, version, timeoutMs, new RandomLoadBalancer());
+    }
+
+    /**
+     * Create a proxy for the remote service, the calls are sent once
+     *
+     * @param interfaceClass service interface
+     * @param version        service version
+     * @param timeoutMs      default timeout of the calls in milliseconds
+     * @param loadBalancer   selects the provider of every call
+     * @param <T>            service type
+     * @return proxy
+     */
+    public <T> T createProxy(Class<T> interfaceClass, String version, long timeoutMs, LoadBalancer loadBalancer) {
+        return createProxy(interfaceClass, version, timeoutMs, loadBalancer, FailfastCluster.NAME, 0);
+    }
+
+    /**
+     * Create a proxy for the remote service
+     *
+     * @param interfaceClass service interface
+     * @param version        service version
+     * @param timeoutMs      default timeout of the calls in milliseconds
+     * @param loadBalancer   selects the provider of every call
+     * @param cluster        default cluster strategy of the methods: failfast, failover or hedged
+     * @param retries        default retries of the failover strategy
+     * @param <T>            service type
+     * @return proxy
+     */
     @SuppressWarnings("unchecked")
-    public <T> T createProxy(Class<T> interfaceClass, String version) {
+    public <T> T createProxy(Class<T> interfaceClass, String version, long timeoutMs, LoadBalancer loadBalancer,
+                             String cluster, int retries) {
+        ServiceDescriptor descriptor = ServiceDescriptor.of(interfaceClass, version);
+        // 重试和对冲请求共享一个预算，限制为调用量的一定比例
+        RetryBudget retryBudget = new RetryBudget(retryBudgetRatio, minRetriesPerSecond);
+        // method -> settings, resolved once per method
+        Map<Method, MethodSettings> methodSettings = new ConcurrentHashMap<>();
         return (T) Proxy.newProxyInstance(
                 interfaceClass.getClassLoader(),
                 new Class<?>[]{interfaceClass},
                 (proxy, method, args) -> {
-                    RpcRequest rpcRequest = new RpcRequest();
-                    rpcRequest.setRequestId(UUID.randomUUID().toString());
-                    rpcRequest.setClassName(method.getDeclaringClass().getName());
-                    rpcRequest.setMethodName(method.getName());
-                    rpcRequest.setParameterTypes(method.getParameterTypes());
-                    rpcRequest.setParameters(args);
-                    rpcRequest.setVersion(version);
-
-                    String serviceName = method.getDeclaringClass().getName();
-                    log.info("Discover service: {}", serviceName);
-                    String serviceAddress = serviceRegistry.discover(serviceName, version);
-                    log.info("Service address: {}", serviceAddress);
-
-                    if (serviceAddress == null) {
-                        log.error("Service not found: {} , version: {}", serviceName, version);
-                        throw new ServiceNotFoundException("Service not found: " + serviceName + ", version: " + version);
+                    // The provider lives in this JVM, call it without the network
+                    MethodInvoker localInvoker = localServices.find(descriptor, method);
+                    if (localInvoker != null) {
+                        return localServices.invoke(localInvoker, method, args);
                     }
-
-                    String[] addressArr = serviceAddress.split(":");
-                    if (addressArr.length != 2) {
-                        log.error("Invalid service address format: {}", serviceAddress);
-                        throw new RpcException("Invalid service address format: " + serviceAddress);
+                    MethodSettings settings = methodSettings.computeIfAbsent(method,
+                            m -> resolveSettings(m, timeoutMs, cluster, retries, retryBudget));
+                    // The elements are received while the caller iterates, the stream is not retried
+                    if (settings.streaming()) {
+                        ClientStream stream = openStream(descriptor, loadBalancer, method, args, settings.timeoutMs());
+                        return method.getReturnType() == Stream.class ? stream.toStream() : stream;
                     }
-                    String host = addressArr[0];
-                    int port = Integer.parseInt(addressArr[1]);
-
-                    RpcClient rpcClient = rpcClientManager.getClient(host, port);
-                    RpcResponse rpcResponse = rpcClient.send(rpcRequest);
+                    Invocation invocation = new RemoteInvocation(descriptor, loadBalancer, method, args, settings);
+                    CompletableFuture<RpcResponse> responseFuture = settings.cluster().invoke(invocation);
 
-                    if (rpcResponse.getError() != null) {
-                        log.error("RPC Error: {}", rpcResponse.getError());
-                        throw new RpcException("RPC Error: " + rpcResponse.getError());
+                    // The method returns a CompletableFuture, complete it when the response arrives
+                    if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+                        return responseFuture.thenApply(RpcResponse::getResult);
                     }
 
-                    Object result = rpcResponse.getResult();
-                    log.info("RPC Response: {}", result);
-
+                    RpcResponse rpcResponse = await(responseFuture);
                     return rpcResponse.getResult();
                 }
         );
     }
+
+    /**
+     * The settings of @RpcMethod override the ones of the reference
+     */
+    private static MethodSettings resolveSettings(Method method, long timeoutMs, String cluster, int retries,
+                                                  RetryBudget retryBudget) {
+        RpcMethod rpcMethod = method.getAnnotation(RpcMethod.class);
+        if (rpcMethod == null) {
+            return new MethodSettings(timeoutMs, false, ServiceDescriptor.isStreaming(method),
+                    ClusterStrategyFactory.create(cluster, retries, retryBudget));
+        }
+        return new MethodSettings(
+                rpcMethod.timeoutMs() > 0 ? rpcMethod.timeoutMs() : timeoutMs,
+                rpcMethod.idempotent(),
+                ServiceDescriptor.isStreaming(method),
+                ClusterStrategyFactory.create(rpcMethod.cluster().isEmpty() ? cluster : rpcMethod.cluster(),
+                        rpcMethod.retries() >= 0 ? rpcMethod.retries() : retries, retryBudget));
+    }
+
+    private record MethodSettings(long timeoutMs, boolean idempotent, boolean streaming, ClusterStrategy cluster) {
+    }
+
+    /**
+     * One call of the proxy, every attempt selects a provider and sends the request to it
+     */
+    private class RemoteInvocation implements Invocation {
+
+        private final ServiceDescriptor descriptor;
+        private final LoadBalancer loadBalancer;
+        private final Method method;
+        private final Object[] args;
+        private final MethodSettings settings;
+
+        RemoteInvocation(ServiceDescriptor descriptor, LoadBalancer loadBalancer, Method method, Object[] args,
+                         MethodSettings settings) {
+            this.descriptor = descriptor;
+            this.loadBalancer = loadBalancer;
+            this.method = method;
+            this.args = args;
+            this.settings = settings;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return settings.idempotent();
+        }
+
+        @Override
+        public CompletableFuture<RpcResponse> attempt(Set<String> tried) {
+            // 本地快照，首次订阅时在加载完成后继续，不阻塞调用线程
+            return serviceRegistry.discoverAsync(descriptor.getServiceName(), descriptor.getVersion())
+                    .thenCompose(endpoints -> attempt(endpoints, tried));
+        }
+
+        private CompletableFuture<RpcResponse> attempt(List<Endpoint> endpoints, Set<String> tried) {
+            // 已经取得熔断器和并发限制的许可，连接建立之前不阻塞调用线程
+            return selectTarget(endpoints, tried, loadBalancer, method, args)
+                    .thenCompose(target -> sendTo(target, tried));
+        }
+
+        private CompletableFuture<RpcResponse> sendTo(Target target, Set<String> tried) {
+            Endpoint endpoint = target.endpoint();
+            EndpointGuard guard = target.guard();
+            tried.add(endpoint.getAddress());
+
+            // 记录在途请求数和延迟，供负载均衡使用
+            EndpointStats stats = EndpointStats.of(endpoint);
+            stats.begin();
+            long start = System.nanoTime();
+            try {
+                return send(target.client(), endpoint, descriptor, method, args, settings.timeoutMs())
+                        .whenComplete((response, throwable) -> {
+                            long elapsed = System.nanoTime() - start;
+                            stats.end(elapsed);
+                            guard.release(elapsed, throwable);
+                        });
+            } catch (RuntimeException e) {
+                long elapsed = System.nanoTime() - start;
+                stats.end(elapsed);
+                guard.release(elapsed, e);
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    /**
+     * Select the provider and its connection, and take the permit of its guard.
+     * The providers already tried by the call are skipped while there are others.
+     * Try the other providers when the selected one can not be connected, is reconnecting,
+     * has an open circuit breaker or has reached its concurrency limit.
+     * The connection is awaited by composing on it, so the caller thread, the I/O thread or the timer
+     * which starts the attempt never blocks
+     */
+    private CompletableFuture<Target> selectTarget(List<Endpoint> endpoints, Set<String> tried,
+                                                   LoadBalancer loadBalancer, Method method, Object[] args) {
+        List<Endpoint> candidates = endpoints;
+        if (!tried.isEmpty() && endpoints.size() > 1) {
+            List<Endpoint> untried = new ArrayList<>(endpoints.size());
+            for (Endpoint endpoint : endpoints) {
+                if (!tried.contains(endpoint.getAddress())) {
+                    untried.add(endpoint);
+                }
+            }
+            if (!untried.isEmpty()) {
+                candidates = untried;
+            }
+        }
+        return selectTarget(endpoints, candidates, loadBalancer, method, args);
+    }
+
+    private CompletableFuture<Target> selectTarget(List<Endpoint> endpoints, List<Endpoint> candidates,
+                                                   LoadBalancer loadBalancer, Method method, Object[] args) {
+        Endpoint endpoint;
+        try {
+            endpoint = loadBalancer.select(endpoints, candidates, method, args);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return rpcClientManager.getClientAsync(endpoint)
+                .thenApply(client -> {
+                    EndpointGuard guard = endpointGuards.of(endpoint);
+                    guard.acquire();
+                    return new Target(endpoint, client, guard);
+                })
+                .exceptionallyCompose(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (!(cause instanceof RpcException) || candidates.size() <= 1) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                    log.debug("Skip {}: {}", endpoint, cause.getMessage());
+                    List<Endpoint> others = new ArrayList<>(candidates);
+                    others.remove(endpoint);
+                    return selectTarget(endpoints, others, loadBalancer, method, args);
+                });
+    }
+
+    private record Target(Endpoint endpoint, RpcClient client, EndpointGuard guard) {
+    }
+
+    /**
+     * Open a server-streaming call on one provider.
+     * The latency recorded for the provider is the time to the first element, the length of a stream
+     * says nothing about the provider. The cluster strategy does not apply: the elements already consumed
+     * can not be taken back, a failed stream fails the iteration.
+     *
+     * @param timeoutMs max wait for each element
+     */
+    private ClientStream openStream(ServiceDescriptor descriptor, LoadBalancer loadBalancer, Method method,
+                                    Object[] args, long timeoutMs) throws InterruptedException {
+        List<Endpoint> endpoints = serviceRegistry.discover(descriptor.getServiceName(), descriptor.getVersion());
+        // the proxy returns the stream to iterate, waiting for the connection here is part of the call
+        Target target = await(selectTarget(endpoints, new HashSet<>(), loadBalancer, method, args));
+        RpcClient rpcClient = target.client();
+        EndpointGuard guard = target.guard();
+        int methodId = useServiceIds(rpcClient, target.endpoint(), descriptor) ? descriptor.getMethodId(method) : -1;
+
+        EndpointStats stats = EndpointStats.of(target.endpoint());
+        stats.begin();
+        long start = System.nanoTime();
+        ClientStream stream;
+        try {
+            stream = rpcClient.openStream(buildRequest(descriptor, method, methodId, args), streamWindow, timeoutMs);
+        } catch (RuntimeException e) {
+            long elapsed = System.nanoTime() - start;
+            stats.end(elapsed);
+            guard.release(elapsed, e);
+            throw e;
+        }
+        stream.started().whenComplete((ignored, throwable) -> {
+            long elapsed = System.nanoTime() - start;
+            stats.end(elapsed);
+            guard.release(elapsed, throwable);
+            // this call fails, the next ones send the method names
+            if (throwable instanceof UnknownMethodIdException) {
+                rpcClient.rejectServiceId(descriptor.getServiceId());
+            }
+        });
+        return stream;
+    }
+
+    /**
+     * Whether the request may carry the service id and method id instead of the names.
+     * The ids are not tried when the provider has published a different service id or has rejected it before
+     */
+    private static boolean useServiceIds(RpcClient rpcClient, Endpoint endpoint, ServiceDescriptor descriptor) {
+        boolean idMismatch = endpoint.getServiceId() != 0 && endpoint.getServiceId() != descriptor.getServiceId();
+        return !idMismatch && rpcClient.acceptsServiceId(descriptor.getServiceId());
+    }
+
+    /**
+     * Send the request with the service id and method id,
+     * resend it with the method names if the provider does not know the ids.
+     * The ids are not tried when the provider has published a different service id.
+     */
+    private CompletableFuture<RpcResponse> send(RpcClient rpcClient, Endpoint endpoint, ServiceDescriptor descriptor,
+                                                Method method, Object[] args, long timeout) {
+        int methodId = descriptor.getMethodId(method);
+        if (methodId < 0 || !useServiceIds(rpcClient, endpoint, descriptor)) {
+            return rpcClient.sendAsync(buildRequest(descriptor, method, -1, args), timeout);
+        }
+        return rpcClient.sendAsync(buildRequest(descriptor, method, methodId, args), timeout)
+                .exceptionallyCompose(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof UnknownMethodIdException) {
+                        rpcClient.rejectServiceId(descriptor.getServiceId());
+                        return rpcClient.sendAsync(buildRequest(descriptor, method, -1, args), timeout);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
+
+    /**
+     * Build the request
+     *
+     * @param methodId method id, negative to send the method names instead
+     */
+    private RpcRequest buildRequest(ServiceDescriptor descriptor, Method method, int methodId, Object[] args) {
+        RpcRequest rpcRequest = new RpcRequest();
+        rpcRequest.setRequestId(REQUEST_ID_GENERATOR.incrementAndGet());
+        if (methodId >= 0) {
+            rpcRequest.setServiceId(descriptor.getServiceId());
+            rpcRequest.setMethodId(methodId);
+        } else {
+            rpcRequest.setClassName(descriptor.getServiceName());
+            rpcRequest.setMethodName(method.getName());
+            rpcRequest.setParameterTypes(method.getParameterTypes());
+            rpcRequest.setVersion(descriptor.getVersion());
+        }
+        rpcRequest.setParameters(args);
+        return rpcRequest;
+    }
+
+    /**
+     * Wait for the response or the connection, the timeouts are guaranteed by the pending request table
+     * and the connect timeout
+     */
+    private static <T> T await(CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RpcException("RPC request failed, cause: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.exception.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * How a call is sent to the providers: once, again on another provider after a failure,
+ * or hedged with a second copy. The proxy creates one strategy per method of the reference.
+ */
+public interface ClusterStrategy {
+
+    /**
+     * Invoke the call
+     *
+     * @param invocation the call
+     * @return future of the response
+     */
+    CompletableFuture<RpcResponse> invoke(Invocation invocation);
+
+    /**
+     * Whether a failed attempt may be sent again.
+     * Requests which were never executed can always be resent; requests which may have been executed
+     * (timed out, connection lost while waiting) only when the method is idempotent.
+     * Errors answered by the service are never retried.
+     *
+     * @param throwable  the failure of the attempt
+     * @param idempotent whether the method is idempotent
+     * @return true if the call may be retried
+     */
+    static boolean isRetriable(Throwable throwable, boolean idempotent) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof RpcConnectException || cause instanceof CircuitOpenException
+                || cause instanceof ConcurrencyLimitException || cause instanceof ServerBusyException) {
+            return true;
+        }
+        if (cause instanceof ServiceInvocationException || cause instanceof UnknownMethodIdException
+                || cause instanceof ServiceNotFoundException) {
+            return false;
+        }
+        return idempotent && cause instanceof RpcException;
+    }
+
+    static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.exception.RpcException;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Cluster strategy factory
+ * Creates the strategy of a method by the name configured on @RpcMethod or @RpcReference
+ */
+@UtilityClass
+public class ClusterStrategyFactory {
+
+    /**
+     * Create a cluster strategy
+     *
+     * @param name        failfast, failover or hedged
+     * @param retries     retries of the failover strategy
+     * @param retryBudget retry budget of the reference
+     * @return new cluster strategy
+     */
+    public static ClusterStrategy create(String name, int retries, RetryBudget retryBudget) {
+        return switch (name) {
+            case FailfastCluster.NAME -> new FailfastCluster();
+            case FailoverCluster.NAME -> new FailoverCluster(retries, retryBudget);
+            case HedgedCluster.NAME -> new HedgedCluster(retryBudget);
+            default -> throw new RpcException("Unknown cluster strategy: " + name);
+        };
+    }
+
+}
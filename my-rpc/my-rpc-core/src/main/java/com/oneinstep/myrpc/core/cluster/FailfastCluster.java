@@ -0,0 +1,20 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One attempt, the failure goes straight to the caller
+ */
+public class FailfastCluster implements ClusterStrategy {
+
+    public static final String NAME = "failfast";
+
+    @Override
+    public CompletableFuture<RpcResponse> invoke(Invocation invocation) {
+        return invocation.attempt(new HashSet<>(2));
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Retry a failed call on another provider, up to the given number of retries and within the retry budget
+ * <p>
+ * Only the failures accepted by {@link ClusterStrategy#isRetriable(Throwable, boolean)} are retried,
+ * so a non idempotent method is resent only when the previous attempt never reached the service.
+ * The retry starts on the thread which failed the previous attempt, which {@link Invocation#attempt} never blocks.
+ * </p>
+ */
+public class FailoverCluster implements ClusterStrategy {
+
+    public static final String NAME = "failover";
+
+    private final int retries;
+
+    private final RetryBudget retryBudget;
+
+    public FailoverCluster(int retries, RetryBudget retryBudget) {
+        this.retries = Math.max(0, retries);
+        this.retryBudget = retryBudget;
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> invoke(Invocation invocation) {
+        retryBudget.deposit();
+        Set<String> tried = ConcurrentHashMap.newKeySet();
+        return attempt(invocation, tried, 0);
+    }
+
+    private CompletableFuture<RpcResponse> attempt(Invocation invocation, Set<String> tried, int retry) {
+        return invocation.attempt(tried).exceptionallyCompose(throwable -> {
+            if (retry < retries && ClusterStrategy.isRetriable(throwable, invocation.isIdempotent())
+                    && retryBudget.tryWithdraw()) {
+                return attempt(invocation, tried, retry + 1);
+            }
+            return CompletableFuture.failedFuture(ClusterStrategy.unwrap(throwable));
+        });
+    }
+
+}
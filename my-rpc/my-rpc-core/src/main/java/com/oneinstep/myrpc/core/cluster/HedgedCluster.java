@@ -0,0 +1,105 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hedged requests for idempotent methods
+ * <p>
+ * When the first attempt has not answered within the p95 latency of the method, a second copy is sent
+ * to another provider and the first successful response wins; the late one is dropped by its connection.
+ * A retriable failure of the first attempt sends the second copy at once.
+ * The hedges are taken from the retry budget, so they add at most its ratio to the load.
+ * Methods which are not idempotent are never sent twice, they fail over like {@link FailoverCluster}
+ * with one retry.
+ * </p>
+ */
+public class HedgedCluster implements ClusterStrategy {
+
+    public static final String NAME = "hedged";
+
+    private static final double PERCENTILE = 0.95;
+
+    /**
+     * Fires the hedges, shared by all the hedged methods; one thread is enough because
+     * {@link Invocation#attempt} does not block
+     */
+    private static final ScheduledThreadPoolExecutor HEDGE_TIMER;
+
+    static {
+        HEDGE_TIMER = new ScheduledThreadPoolExecutor(1, new DefaultThreadFactory("my-rpc-hedge", true));
+        HEDGE_TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final RetryBudget retryBudget;
+
+    private final LatencyTracker latencyTracker = new LatencyTracker(PERCENTILE);
+
+    private final FailoverCluster failover;
+
+    public HedgedCluster(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        this.failover = new FailoverCluster(1, retryBudget);
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> invoke(Invocation invocation) {
+        if (!invocation.isIdempotent()) {
+            return failover.invoke(invocation);
+        }
+        retryBudget.deposit();
+        Set<String> tried = ConcurrentHashMap.newKeySet();
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        // attempts still running, the call fails when the last one fails
+        AtomicInteger running = new AtomicInteger(1);
+        // 0: no hedge yet, 1: hedge sent or given up
+        AtomicInteger hedged = new AtomicInteger();
+
+        Runnable hedge = () -> {
+            if (!result.isDone() && hedged.compareAndSet(0, 1) && retryBudget.tryWithdraw()) {
+                running.incrementAndGet();
+                send(invocation, tried, result, running, null);
+            }
+        };
+        long delay = latencyTracker.getPercentileNanos();
+        ScheduledFuture<?> timer = delay > 0 ? HEDGE_TIMER.schedule(hedge, delay, TimeUnit.NANOSECONDS) : null;
+        send(invocation, tried, result, running, throwable -> {
+            if (ClusterStrategy.isRetriable(throwable, true)) {
+                hedge.run();
+            }
+        });
+        if (timer != null) {
+            result.whenComplete((response, throwable) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Send one attempt, the first success completes the result, the last failure fails it
+     *
+     * @param onFailure called before the attempt is counted as finished, may start another attempt
+     */
+    private void send(Invocation invocation, Set<String> tried, CompletableFuture<RpcResponse> result,
+                      AtomicInteger running, Consumer<Throwable> onFailure) {
+        long start = System.nanoTime();
+        invocation.attempt(tried).whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                latencyTracker.record(System.nanoTime() - start);
+                result.complete(response);
+                return;
+            }
+            if (onFailure != null) {
+                onFailure.accept(throwable);
+            }
+            if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(ClusterStrategy.unwrap(throwable));
+            }
+        });
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One call of a proxy method, which the cluster strategy sends as one or more attempts
+ */
+public interface Invocation {
+
+    /**
+     * The invoked interface method
+     *
+     * @return method
+     */
+    Method getMethod();
+
+    /**
+     * Whether the method may be executed more than once, only such calls are retried after a timeout or hedged
+     *
+     * @return true if the method is idempotent
+     */
+    boolean isIdempotent();
+
+    /**
+     * Send one attempt, to a provider not tried before if there is one.
+     * Must not block: the strategies start the retries and the hedges on the thread which completed
+     * the previous attempt, an I/O thread, the timeout timer or the hedge timer, so the discovery
+     * and the connection are composed on instead of awaited
+     *
+     * @param tried addresses of the providers already tried by the call, the attempt adds its provider
+     * @return future of the response, completed exceptionally if the attempt could not be sent or failed
+     */
+    CompletableFuture<RpcResponse> attempt(Set<String> tried);
+
+}
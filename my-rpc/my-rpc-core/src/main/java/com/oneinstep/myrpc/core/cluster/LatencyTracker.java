@@ -0,0 +1,71 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentile of the recent latencies of one method
+ * <p>
+ * The latest samples are kept in a ring, the percentile is recomputed from a sorted copy
+ * every RECOMPUTE_INTERVAL samples, so reading it costs one volatile read.
+ * </p>
+ */
+public class LatencyTracker {
+
+    private static final int SAMPLES = 256;
+
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    /**
+     * no percentile before the ring has this many samples
+     */
+    private static final int MIN_SAMPLES = 64;
+
+    private final double percentile;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long percentileNanos = -1;
+
+    /**
+     * @param percentile e.g. 0.95
+     */
+    public LatencyTracker(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Record the latency of a successful call
+     *
+     * @param nanos latency
+     */
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % SAMPLES), nanos);
+        if (n + 1 >= MIN_SAMPLES && (n + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute((int) Math.min(n + 1, SAMPLES));
+        }
+    }
+
+    private void recompute(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        percentileNanos = sorted[Math.min(size - 1, (int) (size * percentile))];
+    }
+
+    /**
+     * The percentile of the recent latencies
+     *
+     * @return latency in nanoseconds, -1 while there are too few samples
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.oneinstep.myrpc.core.cluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the retries and the hedged requests of a reference to a ratio of its calls
+ * <p>
+ * Every call deposits ratio of a token, every retry withdraws a whole token. On top of that a few retries
+ * per second are always allowed, so that a reference with little traffic can still retry.
+ * When a provider is down the retries stay a fraction of the load instead of multiplying it.
+ * </p>
+ */
+public class RetryBudget {
+
+    /**
+     * a token is this many units, so that the deposits stay integers
+     */
+    private static final int SCALE = 1000;
+
+    /**
+     * the balance never exceeds what this many calls deposit
+     */
+    private static final int MAX_DEPOSITS = 10_000;
+
+    private final long deposit;
+
+    private final long maxBalance;
+
+    private final int minRetriesPerSecond;
+
+    private final AtomicLong balance = new AtomicLong();
+
+    private final AtomicLong reserveSecond = new AtomicLong();
+
+    private final AtomicInteger reserveUsed = new AtomicInteger();
+
+    /**
+     * @param ratio               retries allowed per call, e.g. 0.1
+     * @param minRetriesPerSecond retries always allowed per second
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this.deposit = Math.max(0, Math.round(ratio * SCALE));
+        this.maxBalance = Math.max(SCALE, deposit * MAX_DEPOSITS);
+        this.minRetriesPerSecond = minRetriesPerSecond;
+    }
+
+    /**
+     * A call is made
+     */
+    public void deposit() {
+        if (deposit > 0 && balance.get() < maxBalance) {
+            balance.addAndGet(deposit);
+        }
+    }
+
+    /**
+     * Take a token for a retry
+     *
+     * @return false if the budget is exhausted
+     */
+    public boolean tryWithdraw() {
+        long second = System.currentTimeMillis() / 1000;
+        long current = reserveSecond.get();
+        if (current != second && reserveSecond.compareAndSet(current, second)) {
+            reserveUsed.set(0);
+        }
+        if (reserveUsed.incrementAndGet() <= minRetriesPerSecond) {
+            return true;
+        }
+        while (true) {
+            long tokens = balance.get();
+            if (tokens < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(tokens, tokens - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+}
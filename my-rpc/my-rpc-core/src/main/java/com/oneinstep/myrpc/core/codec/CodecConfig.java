@@ -0,0 +1,62 @@
+package com.oneinstep.myrpc.core.codec;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Size limits and compression of the frames, shared by the client and the server pipelines
+ * <pre>
+ * my-rpc.codec.max-frame-size: 8388608
+ * my-rpc.codec.max-message-size: 268435456
+ * my-rpc.codec.chunk-size: 1048576
+ * my-rpc.codec.compression: deflate
+ * my-rpc.codec.compression-threshold: 65536
+ * </pre>
+ */
+@Getter
+@Component
+public class CodecConfig {
+
+    /**
+     * 单个帧的最大长度（含消息头），超过时丢弃这个帧并返回错误
+     */
+    @Value("${my-rpc.codec.max-frame-size:8388608}")
+    private int maxFrameSize;
+
+    /**
+     * 分块消息拼接后、以及解压后的消息体最大长度
+     */
+    @Value("${my-rpc.codec.max-message-size:268435456}")
+    private int maxMessageSize;
+
+    /**
+     * 超过这个长度的消息体拆成多个帧发送，不能超过单个帧的最大长度
+     */
+    @Value("${my-rpc.codec.chunk-size:1048576}")
+    private int chunkSize;
+
+    /**
+     * 压缩算法：none / deflate / snappy，deflate 使用 JDK 自带的 zlib，通常比纯 Java 的 snappy 更快、压缩率更高
+     */
+    @Value("${my-rpc.codec.compression:deflate}")
+    private String compressionName;
+
+    /**
+     * 超过这个长度的消息体被压缩
+     */
+    @Value("${my-rpc.codec.compression-threshold:65536}")
+    private int compressionThreshold;
+
+    private Compression compression;
+
+    @PostConstruct
+    public void init() {
+        compression = Compression.of(compressionName);
+        // a chunk and its header must fit into one frame
+        chunkSize = Math.max(1, Math.min(chunkSize, maxFrameSize - RpcProtocol.HEADER_LENGTH));
+        maxMessageSize = Math.max(maxMessageSize, chunkSize);
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.oneinstep.myrpc.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.compression.Snappy;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the frame body, the code goes into the flags of the header
+ * <p>
+ * DEFLATE is the JDK one backed by the native zlib, the default;
+ * SNAPPY is the pure Java implementation shipped with Netty. Neither needs an extra dependency.
+ * The body is decompressed into a composite buffer growing by components,
+ * and never beyond the size limit, so a small frame can not expand into an unbounded allocation.
+ * </p>
+ */
+public enum Compression {
+
+    NONE(0) {
+        @Override
+        public ByteBuf compress(ByteBuf in, ByteBufAllocator allocator) {
+            return in.retainedDuplicate();
+        }
+
+        @Override
+        public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator, int maxLength) {
+            return in.retainedDuplicate();
+        }
+    },
+
+    DEFLATE(1) {
+        @Override
+        public ByteBuf compress(ByteBuf in, ByteBufAllocator allocator) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            ByteBuf out = allocator.directBuffer(Math.max(OUTPUT_CHUNK, in.readableBytes() / 2));
+            try {
+                for (ByteBuffer input : in.nioBuffers()) {
+                    deflater.setInput(input);
+                    while (!deflater.needsInput()) {
+                        deflate(deflater, out);
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(deflater, out);
+                }
+                return out;
+            } catch (RuntimeException e) {
+                out.release();
+                throw e;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void deflate(Deflater deflater, ByteBuf out) {
+            out.ensureWritable(OUTPUT_CHUNK);
+            int written = deflater.deflate(out.nioBuffer(out.writerIndex(), out.writableBytes()));
+            out.writerIndex(out.writerIndex() + written);
+        }
+
+        @Override
+        public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator, int maxLength) {
+            Inflater inflater = new Inflater();
+            CompositeByteBuf out = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+            try {
+                for (ByteBuffer input : in.nioBuffers()) {
+                    inflater.setInput(input);
+                    while (!inflater.needsInput() && !inflater.finished()) {
+                        ByteBuf chunk = allocator.directBuffer(OUTPUT_CHUNK);
+                        int written;
+                        try {
+                            written = inflater.inflate(chunk.nioBuffer(0, OUTPUT_CHUNK));
+                        } catch (DataFormatException e) {
+                            chunk.release();
+                            throw new DecoderException("Corrupted deflate body", e);
+                        }
+                        if (written == 0) {
+                            chunk.release();
+                            if (inflater.needsDictionary()) {
+                                throw new DecoderException("Deflate body needs a dictionary");
+                            }
+                            continue;
+                        }
+                        out.addComponent(true, chunk.writerIndex(written));
+                        checkLength(out, maxLength);
+                    }
+                }
+                if (!inflater.finished()) {
+                    throw new DecoderException("Truncated deflate body");
+                }
+                return out;
+            } catch (RuntimeException e) {
+                out.release();
+                throw e;
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+
+    /**
+     * The body is compressed in blocks, Netty's snappy encoder only accepts blocks up to Short.MAX_VALUE bytes:
+     * uncompressed length (4 bytes), then per block the compressed length (4 bytes) and the snappy block
+     */
+    SNAPPY(2) {
+        private static final int BLOCK_SIZE = Short.MAX_VALUE;
+
+        @Override
+        public ByteBuf compress(ByteBuf in, ByteBufAllocator allocator) {
+            ByteBuf out = allocator.directBuffer(Math.max(OUTPUT_CHUNK, in.readableBytes() / 2));
+            try {
+                Snappy snappy = new Snappy();
+                out.writeInt(in.readableBytes());
+                for (int offset = 0; offset < in.readableBytes(); offset += BLOCK_SIZE) {
+                    int length = Math.min(BLOCK_SIZE, in.readableBytes() - offset);
+                    int lengthIndex = out.writerIndex();
+                    out.writeInt(0);
+                    snappy.encode(in.slice(in.readerIndex() + offset, length), out, length);
+                    snappy.reset();
+                    out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+                }
+                return out;
+            } catch (RuntimeException e) {
+                out.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator, int maxLength) {
+            ByteBuf input = in.duplicate();
+            // the uncompressed length comes first, check it before allocating anything
+            int length = input.readInt();
+            if (length < 0 || length > maxLength) {
+                throw new TooLongFrameException("Decompressed body of " + length + " bytes exceeds " + maxLength);
+            }
+            CompositeByteBuf out = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+            try {
+                Snappy snappy = new Snappy();
+                while (input.isReadable()) {
+                    int blockLength = input.readInt();
+                    if (blockLength < 0 || blockLength > input.readableBytes()) {
+                        throw new DecoderException("Malformed snappy block length: " + blockLength);
+                    }
+                    ByteBuf block = input.readSlice(blockLength);
+                    // the decoder grows its output to the length of the block's preamble, check it first
+                    int blockSize = preamble(block);
+                    if (blockSize > BLOCK_SIZE || blockSize > length - out.readableBytes()) {
+                        throw new TooLongFrameException("Snappy block of " + blockSize + " bytes exceeds "
+                                + Math.min(BLOCK_SIZE, length - out.readableBytes()));
+                    }
+                    // not growable, a block decoding beyond its preamble fails
+                    ByteBuf chunk = allocator.directBuffer(blockSize, blockSize);
+                    try {
+                        snappy.decode(block, chunk);
+                    } catch (RuntimeException e) {
+                        chunk.release();
+                        throw e;
+                    }
+                    snappy.reset();
+                    out.addComponent(true, chunk);
+                }
+                if (out.readableBytes() != length) {
+                    throw new DecoderException("Snappy body has " + out.readableBytes() + " bytes, expected " + length);
+                }
+                return out;
+            } catch (IndexOutOfBoundsException e) {
+                out.release();
+                throw new DecoderException("Corrupted snappy body", e);
+            } catch (RuntimeException e) {
+                out.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Read the uncompressed length a snappy block starts with, a little-endian varint,
+         * the indexes of the block are not changed
+         */
+        private static int preamble(ByteBuf block) {
+            int length = 0;
+            for (int i = 0; i < 5 && i < block.readableBytes(); i++) {
+                int b = block.getUnsignedByte(block.readerIndex() + i);
+                length |= (b & 0x7f) << (7 * i);
+                if ((b & 0x80) == 0) {
+                    if (length < 0) {
+                        break;
+                    }
+                    return length;
+                }
+            }
+            throw new DecoderException("Malformed snappy preamble");
+        }
+    };
+
+    private static final int OUTPUT_CHUNK = 64 * 1024;
+
+    @Getter
+    private final int code;
+
+    Compression(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Compress the readable bytes, the indexes of the input are not changed
+     *
+     * @param in        uncompressed body
+     * @param allocator allocator of the output
+     * @return compressed body, released by the caller
+     */
+    public abstract ByteBuf compress(ByteBuf in, ByteBufAllocator allocator);
+
+    /**
+     * Decompress the readable bytes, the indexes of the input are not changed
+     *
+     * @param in        compressed body
+     * @param allocator allocator of the output
+     * @param maxLength the decompressed body must not be longer
+     * @return decompressed body, released by the caller
+     * @throws TooLongFrameException if the decompressed body is longer than maxLength
+     */
+    public abstract ByteBuf decompress(ByteBuf in, ByteBufAllocator allocator, int maxLength);
+
+    private static void checkLength(ByteBuf out, int maxLength) {
+        if (out.readableBytes() > maxLength) {
+            throw new TooLongFrameException("Decompressed body exceeds " + maxLength + " bytes");
+        }
+    }
+
+    /**
+     * Get the compression from the flags of the header
+     *
+     * @param flags flags
+     * @return compression
+     */
+    public static Compression of(int flags) {
+        return switch (flags & RpcProtocol.FLAG_COMPRESSION_MASK) {
+            case 0 -> NONE;
+            case 1 -> DEFLATE;
+            case 2 -> SNAPPY;
+            default -> throw new DecoderException("Unknown compression in the flags: " + flags);
+        };
+    }
+
+    /**
+     * Get the compression by its configured name
+     *
+     * @param name none, deflate or snappy
+     * @return compression
+     */
+    public static Compression of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.oneinstep.myrpc.core.codec;
+
+import lombok.Getter;
+
+/**
+ * Message type in the frame header
+ */
+@Getter
+public enum MessageType {
+
+    /**
+     * RPC request
+     */
+    REQUEST((byte) 1),
+    /**
+     * RPC response
+     */
+    RESPONSE((byte) 2),
+    /**
+     * heartbeat, no body
+     */
+    HEARTBEAT((byte) 3),
+    /**
+     * credits granted to a stream, the body is the number of credits
+     */
+    WINDOW_UPDATE((byte) 4);
+
+    private static final MessageType[] TYPES = new MessageType[values().length + 1];
+
+    static {
+        for (MessageType type : values()) {
+            TYPES[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    MessageType(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Get the message type by code
+     *
+     * @param code code in the header
+     * @return message type, null if the code is unknown
+     */
+    public static MessageType of(byte code) {
+        return code > 0 && code < TYPES.length ? TYPES[code] : null;
+    }
+
+}
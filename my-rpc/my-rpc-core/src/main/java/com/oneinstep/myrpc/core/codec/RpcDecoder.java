@@ -1,40 +1,227 @@
 package com.oneinstep.myrpc.core.codec;
 
-import com.oneinstep.myrpc.core.serialize.SerializeUtil;
+import com.oneinstep.myrpc.core.dto.Heartbeat;
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
+import com.oneinstep.myrpc.core.serialize.Serializer;
+import com.oneinstep.myrpc.core.serialize.SerializerFactory;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.LongObjectHashMap;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * RPC decoder
+ * <p>
+ * Parse the header described in {@link RpcProtocol} and route the frame by its message type.
+ * The serializer type of the received frame is remembered on the channel,
+ * so the encoder answers with the same serializer the peer has chosen.
+ * </p>
+ * <p>
+ * The chunks of a large body are collected as the components of a composite buffer, so the body
+ * is never copied into one contiguous buffer, then the body is decompressed if its flags say so.
+ * A body growing beyond the max message size fails its request or response with
+ * {@link RpcProtocol#STATUS_TOO_LARGE}, its remaining chunks are skipped.
+ * </p>
  */
 @Slf4j
 public class RpcDecoder extends ByteToMessageDecoder {
 
     /**
-     * Generic class type
+     * The serializer chosen by the peer of this connection
      */
-    private final Class<?> genericClass;
+    public static final AttributeKey<Serializer> NEGOTIATED_SERIALIZER = AttributeKey.valueOf("my-rpc.serializer");
 
-    public RpcDecoder(Class<?> genericClass) {
-        this.genericClass = genericClass;
+    /**
+     * Whether the peer of this connection decodes compressed and chunked frames
+     */
+    public static final AttributeKey<Boolean> PEER_CODEC_FEATURES = AttributeKey.valueOf("my-rpc.codec-features");
+
+    private final CodecConfig codecConfig;
+
+    /**
+     * request id -> the chunks of the body received so far
+     */
+    private final LongObjectHashMap<CompositeByteBuf> chunks = new LongObjectHashMap<>();
+
+    /**
+     * request ids whose remaining chunks are skipped because the body is too large
+     */
+    private final Set<Long> discarding = new HashSet<>();
+
+    public RpcDecoder(CodecConfig codecConfig) {
+        this.codecConfig = codecConfig;
     }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-        // If the readable length of the ByteBuf is less than 4, return directly
-        if (in.readableBytes() < 4) {
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException {
+        // RpcFrameDecoder 保证这里是一个完整的帧
+        if (in.readableBytes() < RpcProtocol.HEADER_LENGTH) {
+            return;
+        }
+        short magic = in.readShort();
+        if (magic != RpcProtocol.MAGIC) {
+            throw new CorruptedFrameException("Invalid magic number: " + magic);
+        }
+        byte version = in.readByte();
+        if (version != RpcProtocol.VERSION) {
+            throw new CorruptedFrameException("Unsupported protocol version: " + version);
+        }
+        MessageType type = MessageType.of(in.readByte());
+        byte serializerType = in.readByte();
+        int flags = in.readByte();
+        byte status = in.readByte();
+        long requestId = in.readLong();
+        int bodyLength = in.readInt();
+        ByteBuf body = in.readSlice(bodyLength);
+
+        if (type == null) {
+            throw new CorruptedFrameException("Unknown message type, request id: " + requestId);
+        }
+        if ((flags & RpcProtocol.FLAG_CODEC_FEATURES) != 0 && ctx.channel().attr(PEER_CODEC_FEATURES).get() == null) {
+            ctx.channel().attr(PEER_CODEC_FEATURES).set(Boolean.TRUE);
+        }
+        // heartbeat frames carry no body, the kind is in the status byte
+        if (type == MessageType.HEARTBEAT) {
+            out.add(Heartbeat.of(status));
+            return;
+        }
+        // window updates carry the credits as a 4-byte int, not serialized
+        if (type == MessageType.WINDOW_UPDATE) {
+            if (bodyLength != Integer.BYTES) {
+                throw new CorruptedFrameException("Invalid window update of " + bodyLength + " bytes, request id: " + requestId);
+            }
+            out.add(new WindowUpdate(requestId, body.readInt()));
             return;
         }
-        // 由于使用了 LengthFieldBasedFrameDecoder 解码器，前 4 个字节是消息的长度
-        byte[] data = new byte[in.readableBytes()];
-        in.readBytes(data);
 
-        // 反序列化
-        Object deserialize = SerializeUtil.deserialize(data, genericClass);
-        out.add(deserialize);
+        // 分块的消息体，收齐之前只保存切片
+        boolean chunked = (flags & RpcProtocol.FLAG_CHUNKED) != 0;
+        CompositeByteBuf assembled = null;
+        if (chunked || !chunks.isEmpty() || !discarding.isEmpty()) {
+            if (!discarding.isEmpty() && (chunked ? discarding.contains(requestId) : discarding.remove(requestId))) {
+                return;
+            }
+            assembled = chunks.get(requestId);
+            if (assembled == null && chunked) {
+                assembled = ctx.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+                chunks.put(requestId, assembled);
+            }
+            if (assembled != null) {
+                if ((long) assembled.readableBytes() + bodyLength > codecConfig.getMaxMessageSize()) {
+                    chunks.remove(requestId).release();
+                    if (chunked) {
+                        discarding.add(requestId);
+                    }
+                    addIfNotNull(out, rejectTooLarge(ctx, type, requestId,
+                            "Message exceeds the max message size " + codecConfig.getMaxMessageSize()));
+                    return;
+                }
+                assembled.addComponent(true, body.retain());
+                if (chunked) {
+                    return;
+                }
+                chunks.remove(requestId);
+                body = assembled;
+            }
+        }
+
+        ByteBuf decompressed = null;
+        try {
+            Compression compression = Compression.of(flags);
+            if (compression != Compression.NONE) {
+                try {
+                    decompressed = compression.decompress(body, ctx.alloc(), codecConfig.getMaxMessageSize());
+                } catch (TooLongFrameException e) {
+                    addIfNotNull(out, rejectTooLarge(ctx, type, requestId, e.getMessage()));
+                    return;
+                }
+                body = decompressed;
+            }
+            decodeBody(ctx, type, serializerType, flags, status, requestId, body, out);
+        } finally {
+            if (decompressed != null) {
+                decompressed.release();
+            }
+            if (assembled != null) {
+                assembled.release();
+            }
+        }
+    }
+
+    private void decodeBody(ChannelHandlerContext ctx, MessageType type, byte serializerType, int flags, byte status,
+                            long requestId, ByteBuf body, List<Object> out) throws IOException {
+        Serializer serializer = SerializerFactory.getSerializer(serializerType);
+        Serializer negotiated = ctx.channel().attr(NEGOTIATED_SERIALIZER).get();
+        if (negotiated != serializer) {
+            ctx.channel().attr(NEGOTIATED_SERIALIZER).set(serializer);
+        }
+
+        // 直接从帧的切片反序列化，不拷贝到中间的字节数组
+        try (ByteBufInputStream inputStream = new ByteBufInputStream(body)) {
+            if (type == MessageType.REQUEST) {
+                RpcRequest request = serializer.deserialize(inputStream, RpcRequest.class);
+                request.setRequestId(requestId);
+                out.add(request);
+            } else {
+                RpcResponse response = serializer.deserialize(inputStream, RpcResponse.class);
+                response.setRequestId(requestId);
+                response.setStatus(status);
+                response.setStreamItem((flags & RpcProtocol.FLAG_STREAM) != 0);
+                out.add(response);
+            }
+        }
+    }
+
+    private static void addIfNotNull(List<Object> out, Object msg) {
+        if (msg != null) {
+            out.add(msg);
+        }
+    }
+
+    /**
+     * Fail a request or response that is too large to be received
+     * A request is answered with an error response, a response is replaced by an error response
+     * which fails the pending call.
+     *
+     * @param type      message type of the dropped frame
+     * @param requestId request id of the dropped frame
+     * @param error     error message
+     * @return the error response to pass on for a response, null for a request
+     */
+    static Object rejectTooLarge(ChannelHandlerContext ctx, MessageType type, long requestId, String error) {
+        if (type != MessageType.REQUEST && type != MessageType.RESPONSE) {
+            throw new TooLongFrameException(error);
+        }
+        log.warn("Drop the {} of request {} from {}: {}", type, requestId, ctx.channel().remoteAddress(), error);
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(requestId);
+        response.setStatus(RpcProtocol.STATUS_TOO_LARGE);
+        response.setError(error);
+        if (type == MessageType.REQUEST) {
+            // 从 pipeline 的尾部写出，经过编码器
+            ctx.channel().writeAndFlush(response);
+            return null;
+        }
+        return response;
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        chunks.values().forEach(CompositeByteBuf::release);
+        chunks.clear();
+        discarding.clear();
     }
 }
@@ -1,36 +1,177 @@
 package com.oneinstep.myrpc.core.codec;
 
-import com.oneinstep.myrpc.core.serialize.SerializeUtil;
+import com.oneinstep.myrpc.core.dto.Heartbeat;
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
+import com.oneinstep.myrpc.core.exception.FrameTooLargeException;
+import com.oneinstep.myrpc.core.serialize.Serializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * RPC encoder
+ * <p>
+ * Write the header described in {@link RpcProtocol}, then the body.
+ * The body is serialized straight into a pooled direct buffer,
+ * and the body length is back-patched once the body is written.
+ * </p>
+ * <p>
+ * When the peer has announced that it decodes them, a body above the compression threshold is compressed.
+ * A body above the chunk size is always sent as several frames, each one a header plus a slice of the body,
+ * so no frame exceeds the max frame size, even before the peer has announced its codec features.
+ * A response above the max message size is replaced by a {@link RpcProtocol#STATUS_TOO_LARGE} response,
+ * a request above it fails with {@link FrameTooLargeException}.
+ * </p>
  */
 @Slf4j
-public class RpcEncoder extends MessageToByteEncoder<Object> {
+public class RpcEncoder extends MessageToMessageEncoder<Object> {
     /**
-     * Generic class type
+     * Serializer used when the peer has not chosen one yet
      */
-    private final Class<?> genericClass;
+    private final Serializer serializer;
+
+    private final CodecConfig codecConfig;
 
-    public RpcEncoder(Class<?> genericClass) {
-        this.genericClass = genericClass;
+    public RpcEncoder(Serializer serializer, CodecConfig codecConfig) {
+        this.serializer = serializer;
+        this.codecConfig = codecConfig;
     }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) {
-        // If the generic class is an instance of the message, serialize the message
-        if (genericClass.isInstance(msg)) {
-            // 序列化消息内容为字节数组
-            byte[] bytes = SerializeUtil.serialize(msg);
-            // 写入消息的长度
-            out.writeInt(bytes.length);
-            // 写入消息的内容
-            out.writeBytes(bytes);
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws IOException {
+        MessageType type;
+        long requestId;
+        byte status = RpcProtocol.STATUS_OK;
+        int flags = 0;
+        if (msg instanceof RpcRequest request) {
+            type = MessageType.REQUEST;
+            requestId = request.getRequestId();
+        } else if (msg instanceof RpcResponse response) {
+            type = MessageType.RESPONSE;
+            requestId = response.getRequestId();
+            status = response.getStatus();
+            if (response.isStreamItem()) {
+                flags = RpcProtocol.FLAG_STREAM;
+            }
+        } else if (msg instanceof Heartbeat heartbeat) {
+            type = MessageType.HEARTBEAT;
+            requestId = 0;
+            status = heartbeat.getCode();
+        } else if (msg instanceof WindowUpdate windowUpdate) {
+            type = MessageType.WINDOW_UPDATE;
+            requestId = windowUpdate.getRequestId();
+        } else {
+            throw new EncoderException("Unsupported message: " + msg.getClass().getName());
+        }
+        // 优先使用对端协商的序列化方式
+        Serializer negotiated = ctx.channel().attr(RpcDecoder.NEGOTIATED_SERIALIZER).get();
+        Serializer actual = negotiated != null ? negotiated : serializer;
+
+        // 写入消息头，消息体的长度先占位，消息体写完后回填
+        ByteBuf frame = ctx.alloc().ioBuffer();
+        writeHeader(frame, type, actual, flags, status, requestId, 0);
+        // 心跳没有消息体
+        if (type == MessageType.HEARTBEAT) {
+            out.add(frame);
+            return;
+        }
+        // 流的窗口更新，消息体只有授予的额度
+        if (msg instanceof WindowUpdate windowUpdate) {
+            frame.writeInt(windowUpdate.getCredits());
+            frame.setInt(RpcProtocol.LENGTH_FIELD_OFFSET, Integer.BYTES);
+            out.add(frame);
+            return;
+        }
+        // 直接序列化到 ByteBuf，不经过中间的字节数组
+        try (ByteBufOutputStream outputStream = new ByteBufOutputStream(frame)) {
+            actual.serialize(msg, outputStream);
+        } catch (IOException | RuntimeException e) {
+            frame.release();
+            throw e;
+        }
+        int bodyLength = frame.writerIndex() - RpcProtocol.HEADER_LENGTH;
+        boolean peerFeatures = Boolean.TRUE.equals(ctx.channel().attr(RpcDecoder.PEER_CODEC_FEATURES).get());
+        boolean compress = peerFeatures && codecConfig.getCompression() != Compression.NONE
+                && bodyLength >= codecConfig.getCompressionThreshold();
+        if (!compress && bodyLength <= codecConfig.getChunkSize() && bodyLength <= codecConfig.getMaxMessageSize()) {
+            // 常见的小消息：一个帧，不压缩
+            frame.setInt(RpcProtocol.LENGTH_FIELD_OFFSET, bodyLength);
+            out.add(frame);
+            return;
         }
+        encodeLarge(ctx, type, actual, flags, status, requestId, frame, compress, out);
+    }
+
+    private void encodeLarge(ChannelHandlerContext ctx, MessageType type, Serializer actual, int flags, byte status,
+                             long requestId, ByteBuf frame, boolean compress, List<Object> out) throws IOException {
+        int bodyLength = frame.writerIndex() - RpcProtocol.HEADER_LENGTH;
+        ByteBuf body = frame.retainedSlice(RpcProtocol.HEADER_LENGTH, bodyLength);
+        frame.release();
+        Compression compression = Compression.NONE;
+        if (compress) {
+            ByteBuf compressed = codecConfig.getCompression().compress(body, ctx.alloc());
+            if (compressed.readableBytes() < bodyLength) {
+                body.release();
+                body = compressed;
+                compression = codecConfig.getCompression();
+            } else {
+                compressed.release();
+            }
+        }
+        try {
+            int length = body.readableBytes();
+            if (length > codecConfig.getMaxMessageSize()) {
+                String error = type + " of request " + requestId + " has " + length
+                        + " bytes, exceeds the max message size " + codecConfig.getMaxMessageSize();
+                if (type == MessageType.REQUEST) {
+                    throw new FrameTooLargeException(error);
+                }
+                log.warn("Replace the response: {}", error);
+                RpcResponse response = new RpcResponse();
+                response.setRequestId(requestId);
+                response.setStatus(RpcProtocol.STATUS_TOO_LARGE);
+                response.setError(error);
+                encode(ctx, response, out);
+                return;
+            }
+            // 分块不依赖协商：一个帧装不下的消息体对端只能按块接收，chunk size 不超过单个帧的最大长度
+            int chunkSize = codecConfig.getChunkSize();
+            int offset = 0;
+            do {
+                int size = Math.min(chunkSize, length - offset);
+                boolean last = offset + size >= length;
+                ByteBuf header = ctx.alloc().ioBuffer(RpcProtocol.HEADER_LENGTH);
+                int chunkFlags = flags | compression.getCode() | (last ? 0 : RpcProtocol.FLAG_CHUNKED);
+                writeHeader(header, type, actual, chunkFlags, status, requestId, size);
+                // 消息头和消息体的切片组成一个帧，不拷贝消息体
+                out.add(ctx.alloc().compositeDirectBuffer(2)
+                        .addComponents(true, header, body.retainedSlice(body.readerIndex() + offset, size)));
+                offset += size;
+            } while (offset < length);
+        } finally {
+            body.release();
+        }
+    }
+
+    private static void writeHeader(ByteBuf out, MessageType type, Serializer serializer, int flags, byte status,
+                                    long requestId, int bodyLength) {
+        out.writeShort(RpcProtocol.MAGIC);
+        out.writeByte(RpcProtocol.VERSION);
+        out.writeByte(type.getCode());
+        out.writeByte(serializer.getType());
+        // 告诉对端本端可以解码压缩和分块的帧
+        out.writeByte(flags | RpcProtocol.FLAG_CODEC_FEATURES);
+        out.writeByte(status);
+        out.writeLong(requestId);
+        out.writeInt(bodyLength);
     }
 
-}
\ No newline at end of file
+}
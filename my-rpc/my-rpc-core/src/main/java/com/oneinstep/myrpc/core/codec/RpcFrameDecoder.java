@@ -0,0 +1,69 @@
+package com.oneinstep.myrpc.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * Split the stream into frames by the body length in the header
+ * The header is kept in the frame, RpcDecoder parses it.
+ * <p>
+ * A frame longer than the max frame size is skipped without being buffered. The request or response
+ * it carried fails with {@link RpcProtocol#STATUS_TOO_LARGE} and the connection stays usable.
+ * </p>
+ */
+public class RpcFrameDecoder extends LengthFieldBasedFrameDecoder {
+
+    private final int maxFrameSize;
+
+    /**
+     * bytes of the skipped frame which have not arrived yet
+     */
+    private long bytesToDiscard;
+
+    public RpcFrameDecoder(int maxFrameSize) {
+        super(maxFrameSize,                       // max frame length
+                RpcProtocol.LENGTH_FIELD_OFFSET,  // length field offset
+                RpcProtocol.LENGTH_FIELD_LENGTH,  // length field length
+                0,                                // length adjustment
+                0                                 // initial bytes to strip
+        );
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (bytesToDiscard > 0) {
+            discard(in);
+            if (bytesToDiscard > 0) {
+                return null;
+            }
+        }
+        if (in.readableBytes() < RpcProtocol.HEADER_LENGTH) {
+            return null;
+        }
+        int start = in.readerIndex();
+        long bodyLength = in.getUnsignedInt(start + RpcProtocol.LENGTH_FIELD_OFFSET);
+        if (RpcProtocol.HEADER_LENGTH + bodyLength <= maxFrameSize) {
+            return super.decode(ctx, in);
+        }
+        if (in.getShort(start) != RpcProtocol.MAGIC) {
+            throw new CorruptedFrameException("Invalid magic number: " + in.getShort(start));
+        }
+        MessageType type = MessageType.of(in.getByte(start + 3));
+        long requestId = in.getLong(start + 7);
+        in.skipBytes(RpcProtocol.HEADER_LENGTH);
+        bytesToDiscard = bodyLength;
+        discard(in);
+        return RpcDecoder.rejectTooLarge(ctx, type, requestId,
+                "Frame of " + (RpcProtocol.HEADER_LENGTH + bodyLength) + " bytes exceeds the max frame size " + maxFrameSize);
+    }
+
+    private void discard(ByteBuf in) {
+        int skip = (int) Math.min(bytesToDiscard, in.readableBytes());
+        in.skipBytes(skip);
+        bytesToDiscard -= skip;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.oneinstep.myrpc.core.codec;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * my-rpc wire protocol
+ * <pre>
+ * +-------+---------+------+------------+-------+--------+------------+-------------+------+
+ * | magic | version | type | serializer | flags | status | request id | body length | body |
+ * |  2    |    1    |  1   |     1      |   1   |   1    |     8      |      4      |  n   |
+ * +-------+---------+------+------------+-------+--------+------------+-------------+------+
+ * </pre>
+ * The header has a fixed length, so a frame can be routed by its type and request id
+ * before the body is deserialized.
+ * <p>
+ * flags: bits 0-1 the compression of the body, bit 2 more chunks of the body follow,
+ * bit 3 the response is an element of a stream, bit 7 the sender decodes compressed and chunked frames.
+ * A peer only receives compressed or chunked frames after it has sent a frame with bit 7,
+ * so peers without the support keep working.
+ * </p>
+ * <p>
+ * A streaming call is answered with any number of responses flagged as stream elements,
+ * then one response without the flag which ends the stream. The consumer grants the provider credits
+ * with WINDOW_UPDATE frames, one element per credit, and cancels the stream with a negative grant.
+ * </p>
+ */
+@UtilityClass
+public class RpcProtocol {
+
+    /**
+     * magic number, "mr"
+     */
+    public static final short MAGIC = 0x6D72;
+    /**
+     * protocol version
+     */
+    public static final byte VERSION = 1;
+    /**
+     * header length
+     */
+    public static final int HEADER_LENGTH = 19;
+    /**
+     * offset of the body length field
+     */
+    public static final int LENGTH_FIELD_OFFSET = 15;
+    /**
+     * length of the body length field
+     */
+    public static final int LENGTH_FIELD_LENGTH = 4;
+
+    /**
+     * flags: mask of the compression of the body, see {@link Compression}
+     */
+    public static final int FLAG_COMPRESSION_MASK = 0x03;
+    /**
+     * flags: the body continues in the next frame of the same request id
+     */
+    public static final int FLAG_CHUNKED = 0x04;
+    /**
+     * flags: the response is an element of a stream, more responses of the same request id follow
+     */
+    public static final int FLAG_STREAM = 0x08;
+    /**
+     * flags: the sender decodes compressed and chunked frames
+     */
+    public static final int FLAG_CODEC_FEATURES = 0x80;
+
+    /**
+     * response status: success
+     */
+    public static final byte STATUS_OK = 0;
+    /**
+     * response status: the invocation failed, the error is in the body
+     */
+    public static final byte STATUS_ERROR = 1;
+    /**
+     * response status: the provider is busy, the request was not executed
+     */
+    public static final byte STATUS_BUSY = 2;
+    /**
+     * response status: the provider does not know the service id or method id, the request was not executed
+     */
+    public static final byte STATUS_UNKNOWN_METHOD = 3;
+    /**
+     * response status: the request or the response exceeds the size limit, the error is in the body
+     */
+    public static final byte STATUS_TOO_LARGE = 4;
+
+}
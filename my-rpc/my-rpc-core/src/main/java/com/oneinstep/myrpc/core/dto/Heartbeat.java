@@ -0,0 +1,37 @@
+package com.oneinstep.myrpc.core.dto;
+
+import lombok.Getter;
+
+/**
+ * Heartbeat message, sent in a HEARTBEAT frame without body
+ * The kind is carried in the status byte of the header
+ */
+@Getter
+public enum Heartbeat {
+
+    /**
+     * sent by the client when the connection has been idle
+     */
+    PING((byte) 0),
+    /**
+     * the answer of the server
+     */
+    PONG((byte) 1);
+
+    private final byte code;
+
+    Heartbeat(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Get the heartbeat by the status byte
+     *
+     * @param code status byte in the header
+     * @return heartbeat, PING for an unknown code
+     */
+    public static Heartbeat of(byte code) {
+        return code == PONG.code ? PONG : PING;
+    }
+
+}
@@ -19,9 +19,18 @@ public class RpcRequest implements Serializable {
     private static final long serialVersionUID = -4355285085441097045L;
 
     /**
-     * request id
+     * request id, carried in the frame header
      */
-    private String requestId;
+    private transient long requestId;
+    /**
+     * service id, see {@link com.oneinstep.myrpc.core.metadata.ServiceDescriptor}
+     * 0 means the request carries the interface name, method name, version and parameter types instead
+     */
+    private int serviceId;
+    /**
+     * method id, only used when the service id is set
+     */
+    private int methodId;
     /**
      * interface name
      */
@@ -19,9 +19,19 @@ public class RpcResponse implements Serializable {
     private static final long serialVersionUID = -4189080804671234164L;
 
     /**
-     * request id
+     * request id, carried in the frame header
      */
-    private String requestId;
+    private transient long requestId;
+    /**
+     * response status, carried in the frame header
+     *
+     * @see com.oneinstep.myrpc.core.codec.RpcProtocol#STATUS_OK
+     */
+    private transient byte status;
+    /**
+     * the response is an element of a stream and more responses follow, carried in the flags of the header
+     */
+    private transient boolean streamItem;
     /**
      * result of the request
      */
@@ -0,0 +1,53 @@
+package com.oneinstep.myrpc.core.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Credits granted by the consumer to a stream, sent in a WINDOW_UPDATE frame
+ * The body is the number of credits as a 4-byte int, a negative number cancels the stream
+ */
+@Getter
+@ToString
+public class WindowUpdate {
+
+    private static final int CANCEL = -1;
+
+    /**
+     * request id of the streaming call, carried in the frame header
+     */
+    private final long requestId;
+
+    private final int credits;
+
+    public WindowUpdate(long requestId, int credits) {
+        this.requestId = requestId;
+        this.credits = credits;
+    }
+
+    /**
+     * Grant credits, the provider may send one more element per credit
+     *
+     * @param requestId request id of the streaming call
+     * @param credits   number of credits, positive
+     * @return window update
+     */
+    public static WindowUpdate grant(long requestId, int credits) {
+        return new WindowUpdate(requestId, credits);
+    }
+
+    /**
+     * Cancel the stream, the provider stops sending and closes its iterator
+     *
+     * @param requestId request id of the streaming call
+     * @return window update
+     */
+    public static WindowUpdate cancel(long requestId) {
+        return new WindowUpdate(requestId, CANCEL);
+    }
+
+    public boolean isCancel() {
+        return credits < 0;
+    }
+
+}
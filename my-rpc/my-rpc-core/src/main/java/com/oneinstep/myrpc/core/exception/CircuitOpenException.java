@@ -0,0 +1,12 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The circuit breaker of the provider endpoint is open, the request was not sent
+ */
+public class CircuitOpenException extends RpcException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The calls in flight to the provider endpoint have reached the concurrency limit, the request was not sent
+ */
+public class ConcurrencyLimitException extends RpcException {
+
+    public ConcurrencyLimitException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The request or the response exceeds the frame or message size limit of the connection
+ */
+public class FrameTooLargeException extends RpcException {
+
+    public FrameTooLargeException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * No connection to the provider is available, the request was not sent and can be sent to another provider
+ */
+public class RpcConnectException extends RpcException {
+
+    public RpcConnectException(String message) {
+        super(message);
+    }
+
+    public RpcConnectException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
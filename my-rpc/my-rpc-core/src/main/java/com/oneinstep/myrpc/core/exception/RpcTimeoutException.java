@@ -0,0 +1,12 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The response did not arrive within the timeout of the call
+ */
+public class RpcTimeoutException extends RpcException {
+
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+
+}
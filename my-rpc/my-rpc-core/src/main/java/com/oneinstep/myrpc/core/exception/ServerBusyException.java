@@ -0,0 +1,12 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The provider rejected the request because it is overloaded, the request was not executed
+ */
+public class ServerBusyException extends RpcException {
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+
+}
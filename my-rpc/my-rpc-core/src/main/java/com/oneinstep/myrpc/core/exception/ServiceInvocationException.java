@@ -0,0 +1,17 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The provider answered the request with an error, usually the exception thrown by the service method.
+ * The provider itself is healthy, so the error does not count against the endpoint.
+ */
+public class ServiceInvocationException extends RpcException {
+
+    public ServiceInvocationException(String message) {
+        super(message);
+    }
+
+    public ServiceInvocationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
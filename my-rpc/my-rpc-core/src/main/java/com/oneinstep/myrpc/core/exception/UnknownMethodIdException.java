@@ -0,0 +1,14 @@
+package com.oneinstep.myrpc.core.exception;
+
+/**
+ * The provider does not know the service id or the method id of the request,
+ * usually because provider and consumer are built with different versions of the interface.
+ * The request was not executed and can be resent with the full method names.
+ */
+public class UnknownMethodIdException extends RpcException {
+
+    public UnknownMethodIdException(String message) {
+        super(message);
+    }
+
+}
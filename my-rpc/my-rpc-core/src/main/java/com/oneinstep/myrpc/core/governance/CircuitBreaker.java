@@ -0,0 +1,210 @@
+package com.oneinstep.myrpc.core.governance;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Circuit breaker of one provider endpoint, driven by the error rate and the slow call rate
+ * <p>
+ * The outcomes are counted in a sliding window of time buckets. The breaker opens when the window holds
+ * at least minimumCalls calls and the failure rate or the slow call rate reaches its threshold.
+ * After openMs it lets halfOpenCalls probes through: the breaker closes when all of them succeed
+ * in time and opens again on the first failed or slow probe.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final long bucketMs;
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final long slowCallNanos;
+
+    private final double slowCallRateThreshold;
+
+    private final long openMs;
+
+    private final int halfOpenCalls;
+
+    /**
+     * per bucket: the bucket number it currently counts, calls, failures, slow calls
+     * guarded by this
+     */
+    private final long[] bucketEpochs = new long[BUCKETS];
+    private final int[] calls = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final int[] slowCalls = new int[BUCKETS];
+
+    private volatile State state = State.CLOSED;
+
+    private volatile long openedAt;
+
+    /**
+     * probes left to let through in the half open state
+     */
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    /**
+     * probes completed successfully in the half open state
+     */
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    /**
+     * @param windowMs              length of the sliding window
+     * @param minimumCalls          calls required in the window before the rates are evaluated
+     * @param failureRateThreshold  failure rate that opens the breaker, 0-1
+     * @param slowCallMs            calls slower than this are slow, 0 disables the slow call rate
+     * @param slowCallRateThreshold slow call rate that opens the breaker, 0-1
+     * @param openMs                how long the breaker stays open before probing
+     * @param halfOpenCalls         probes let through in the half open state
+     */
+    public CircuitBreaker(long windowMs, int minimumCalls, double failureRateThreshold, long slowCallMs,
+                          double slowCallRateThreshold, long openMs, int halfOpenCalls) {
+        this.bucketMs = Math.max(1, windowMs / BUCKETS);
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallMs > 0 ? slowCallMs * 1_000_000 : Long.MAX_VALUE;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMs = openMs;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Whether a call may be sent now
+     *
+     * @return false if the breaker is open or all the probes are taken
+     */
+    public boolean tryAcquire() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) {
+                return false;
+            }
+            halfOpen();
+        }
+        return halfOpenPermits.getAndDecrement() > 0;
+    }
+
+    /**
+     * Record the outcome of a call let through by {@link #tryAcquire()}
+     *
+     * @param elapsedNanos latency of the call
+     * @param failure      whether the call failed because of the endpoint
+     */
+    public void onResult(long elapsedNanos, boolean failure) {
+        boolean slow = elapsedNanos >= slowCallNanos;
+        State current = state;
+        if (current == State.OPEN) {
+            // a call sent before the breaker opened
+            return;
+        }
+        if (current == State.HALF_OPEN) {
+            if (failure || slow) {
+                open();
+            } else if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (record(failure, slow)) {
+            open();
+        }
+    }
+
+    /**
+     * Count the call, and evaluate the window
+     *
+     * @return true if the breaker should open
+     */
+    private synchronized boolean record(boolean failure, boolean slow) {
+        long epoch = System.currentTimeMillis() / bucketMs;
+        int index = (int) (epoch % BUCKETS);
+        if (bucketEpochs[index] != epoch) {
+            bucketEpochs[index] = epoch;
+            calls[index] = 0;
+            failures[index] = 0;
+            slowCalls[index] = 0;
+        }
+        calls[index]++;
+        if (failure) {
+            failures[index]++;
+        }
+        if (slow) {
+            slowCalls[index]++;
+        }
+        Window window = window(epoch);
+        return window.calls >= minimumCalls
+                && (window.failureRate() >= failureRateThreshold || window.slowCallRate() >= slowCallRateThreshold);
+    }
+
+    private Window window(long epoch) {
+        int totalCalls = 0;
+        int totalFailures = 0;
+        int totalSlowCalls = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (epoch - bucketEpochs[i] < BUCKETS) {
+                totalCalls += calls[i];
+                totalFailures += failures[i];
+                totalSlowCalls += slowCalls[i];
+            }
+        }
+        return new Window(totalCalls, totalFailures, totalSlowCalls);
+    }
+
+    private synchronized void open() {
+        openedAt = System.currentTimeMillis();
+        state = State.OPEN;
+    }
+
+    private synchronized void halfOpen() {
+        if (state == State.OPEN) {
+            halfOpenPermits.set(halfOpenCalls);
+            halfOpenSuccesses.set(0);
+            state = State.HALF_OPEN;
+        }
+    }
+
+    private synchronized void close() {
+        if (state == State.HALF_OPEN) {
+            // the calls counted before the breaker opened do not describe the endpoint any more
+            Arrays.fill(bucketEpochs, -1);
+            state = State.CLOSED;
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Counters of the sliding window
+     *
+     * @return calls, failures and slow calls of the window
+     */
+    public synchronized Window getWindow() {
+        return window(System.currentTimeMillis() / bucketMs);
+    }
+
+    public record Window(int calls, int failures, int slowCalls) {
+
+        public double failureRate() {
+            return calls == 0 ? 0 : (double) failures / calls;
+        }
+
+        public double slowCallRate() {
+            return calls == 0 ? 0 : (double) slowCalls / calls;
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.oneinstep.myrpc.core.governance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit of the calls in flight to one provider endpoint, gradient style
+ * <p>
+ * Two moving averages of the latency are kept: a slow one as the latency without queueing
+ * and a fast one as the current latency. Their ratio is the gradient: 1 while the endpoint keeps up,
+ * below 1 once requests start to queue. Every sample moves the limit towards
+ * limit * gradient + sqrt(limit), so the limit grows slowly while the latency is flat and
+ * shrinks as soon as the latency rises. A failed or rejected call cuts the limit by the backoff ratio.
+ * The limit only grows while the calls in flight use at least half of it,
+ * an idle endpoint does not earn a limit it has never been tested with.
+ * </p>
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * weight of the newest sample in the current latency
+     */
+    private static final double SHORT_ALPHA = 0.1;
+
+    /**
+     * weight of the newest sample in the latency without queueing
+     */
+    private static final double LONG_ALPHA = 0.01;
+
+    /**
+     * latency increase tolerated before the limit shrinks
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * how fast the limit follows the computed value
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * guarded by this, read without the lock by tryAcquire
+     */
+    private volatile double limit;
+
+    private double shortRttNanos;
+
+    private double longRttNanos;
+
+    /**
+     * @param initialLimit limit before any sample
+     * @param minLimit     the limit never drops below this
+     * @param maxLimit     the limit never grows above this
+     * @param backoffRatio the limit is multiplied by this on a failure, 0-1
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Take a slot for a call
+     *
+     * @return false if the calls in flight have reached the limit
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > (int) limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release the slot of a call and adjust the limit
+     *
+     * @param elapsedNanos latency of the call
+     * @param dropped      whether the call failed because of the endpoint: timed out, rejected, connection lost
+     */
+    public void release(long elapsedNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        update(elapsedNanos, dropped, current);
+    }
+
+    /**
+     * Release the slot of a call that was not sent, the limit is not changed
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long elapsedNanos, boolean dropped, int inFlightAtRelease) {
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+        if (longRttNanos == 0) {
+            shortRttNanos = elapsedNanos;
+            longRttNanos = elapsedNanos;
+            return;
+        }
+        shortRttNanos += SHORT_ALPHA * (elapsedNanos - shortRttNanos);
+        longRttNanos += LONG_ALPHA * (elapsedNanos - longRttNanos);
+        // the latency has dropped below the baseline, e.g. after a slow period: follow it at once
+        if (shortRttNanos < longRttNanos) {
+            longRttNanos = shortRttNanos;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (newLimit > limit && inFlightAtRelease < limit / 2) {
+            return;
+        }
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Moving average of the latency without queueing
+     *
+     * @return latency in nanoseconds, 0 before the first sample
+     */
+    public synchronized double getBaselineRttNanos() {
+        return longRttNanos;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.oneinstep.myrpc.core.governance;
+
+import com.oneinstep.myrpc.core.exception.CircuitOpenException;
+import com.oneinstep.myrpc.core.exception.ConcurrencyLimitException;
+import com.oneinstep.myrpc.core.exception.ServiceInvocationException;
+import com.oneinstep.myrpc.core.exception.UnknownMethodIdException;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * The circuit breaker and the concurrency limiter of one provider endpoint
+ * <p>
+ * A call takes a permit before it is sent and returns it with its outcome. Errors answered by the provider
+ * (the service method threw, unknown method id) do not count as failures of the endpoint,
+ * timeouts, busy rejections and connection errors do.
+ * </p>
+ */
+public class EndpointGuard {
+
+    private final String address;
+
+    /**
+     * null if disabled
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * null if disabled
+     */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public EndpointGuard(String address, CircuitBreaker circuitBreaker, ConcurrencyLimiter concurrencyLimiter) {
+        this.address = address;
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Take a permit for a call, to be returned by {@link #release(long, Throwable)}
+     *
+     * @throws CircuitOpenException       if the circuit breaker is open
+     * @throws ConcurrencyLimitException  if the calls in flight have reached the limit
+     */
+    public void acquire() {
+        if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+            throw new ConcurrencyLimitException("Concurrency limit " + concurrencyLimiter.getLimit() + " of " + address + " reached");
+        }
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.cancel();
+            }
+            throw new CircuitOpenException("Circuit breaker of " + address + " is " + circuitBreaker.getState());
+        }
+    }
+
+    /**
+     * Return the permit with the outcome of the call
+     *
+     * @param elapsedNanos latency of the call
+     * @param throwable    the error of the call, null if it succeeded
+     */
+    public void release(long elapsedNanos, Throwable throwable) {
+        boolean failure = isEndpointFailure(throwable);
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.release(elapsedNanos, failure);
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.onResult(elapsedNanos, failure);
+        }
+    }
+
+    private static boolean isEndpointFailure(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        return cause != null && !(cause instanceof ServiceInvocationException) && !(cause instanceof UnknownMethodIdException);
+    }
+
+    /**
+     * State of the guard for the metrics
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        CircuitBreaker.Window window = circuitBreaker != null ? circuitBreaker.getWindow() : new CircuitBreaker.Window(0, 0, 0);
+        return new Snapshot(address,
+                circuitBreaker != null ? circuitBreaker.getState() : CircuitBreaker.State.CLOSED,
+                window.calls(), window.failureRate(), window.slowCallRate(),
+                concurrencyLimiter != null ? concurrencyLimiter.getLimit() : -1,
+                concurrencyLimiter != null ? concurrencyLimiter.getInFlight() : -1,
+                concurrencyLimiter != null ? concurrencyLimiter.getBaselineRttNanos() / 1_000_000 : 0);
+    }
+
+    /**
+     * @param limit      concurrency limit, -1 if the limiter is disabled
+     * @param inFlight   calls in flight, -1 if the limiter is disabled
+     * @param baselineMs latency without queueing in milliseconds
+     */
+    public record Snapshot(String address, CircuitBreaker.State state, int windowCalls, double failureRate,
+                           double slowCallRate, int limit, int inFlight, double baselineMs) {
+    }
+
+}
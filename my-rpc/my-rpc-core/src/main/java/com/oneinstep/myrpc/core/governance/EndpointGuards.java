@@ -0,0 +1,124 @@
+package com.oneinstep.myrpc.core.governance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The guards of the provider endpoints, one per address and shared by all the services calling it
+ * <pre>
+ * my-rpc.circuit-breaker.enabled: true
+ * my-rpc.circuit-breaker.window-ms: 10000
+ * my-rpc.circuit-breaker.minimum-calls: 20
+ * my-rpc.circuit-breaker.failure-rate: 0.5
+ * my-rpc.circuit-breaker.slow-call-ms: 1000
+ * my-rpc.circuit-breaker.slow-call-rate: 0.8
+ * my-rpc.circuit-breaker.open-ms: 5000
+ * my-rpc.circuit-breaker.half-open-calls: 5
+ * my-rpc.concurrency-limit.enabled: true
+ * my-rpc.concurrency-limit.initial: 100
+ * my-rpc.concurrency-limit.min: 4
+ * my-rpc.concurrency-limit.max: 1000
+ * my-rpc.concurrency-limit.backoff-ratio: 0.9
+ * </pre>
+ */
+@Component
+public class EndpointGuards {
+
+    /**
+     * host:port -> guard, kept across the registry refreshes
+     */
+    private final Map<String, EndpointGuard> guards = new ConcurrentHashMap<>();
+
+    @Value("${my-rpc.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+
+    /**
+     * 统计错误率和慢调用率的滑动窗口
+     */
+    @Value("${my-rpc.circuit-breaker.window-ms:10000}")
+    private long windowMs;
+
+    /**
+     * 窗口内至少有这么多调用时才计算比率
+     */
+    @Value("${my-rpc.circuit-breaker.minimum-calls:20}")
+    private int minimumCalls;
+
+    @Value("${my-rpc.circuit-breaker.failure-rate:0.5}")
+    private double failureRate;
+
+    /**
+     * 超过这个时间的调用算作慢调用，0 表示不统计慢调用
+     */
+    @Value("${my-rpc.circuit-breaker.slow-call-ms:1000}")
+    private long slowCallMs;
+
+    @Value("${my-rpc.circuit-breaker.slow-call-rate:0.8}")
+    private double slowCallRate;
+
+    /**
+     * 熔断持续时间，之后放行少量探测请求
+     */
+    @Value("${my-rpc.circuit-breaker.open-ms:5000}")
+    private long openMs;
+
+    @Value("${my-rpc.circuit-breaker.half-open-calls:5}")
+    private int halfOpenCalls;
+
+    @Value("${my-rpc.concurrency-limit.enabled:true}")
+    private boolean concurrencyLimitEnabled;
+
+    @Value("${my-rpc.concurrency-limit.initial:100}")
+    private int initialLimit;
+
+    @Value("${my-rpc.concurrency-limit.min:4}")
+    private int minLimit;
+
+    @Value("${my-rpc.concurrency-limit.max:1000}")
+    private int maxLimit;
+
+    /**
+     * 调用失败时限制乘以这个比例
+     */
+    @Value("${my-rpc.concurrency-limit.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    /**
+     * Get the guard of the endpoint
+     *
+     * @param endpoint endpoint
+     * @return guard
+     */
+    public EndpointGuard of(Endpoint endpoint) {
+        EndpointGuard guard = guards.get(endpoint.getAddress());
+        return guard != null ? guard : guards.computeIfAbsent(endpoint.getAddress(), this::create);
+    }
+
+    private EndpointGuard create(String address) {
+        CircuitBreaker circuitBreaker = circuitBreakerEnabled
+                ? new CircuitBreaker(windowMs, minimumCalls, failureRate, slowCallMs, slowCallRate, openMs, halfOpenCalls)
+                : null;
+        ConcurrencyLimiter concurrencyLimiter = concurrencyLimitEnabled
+                ? new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio)
+                : null;
+        return new EndpointGuard(address, circuitBreaker, concurrencyLimiter);
+    }
+
+    /**
+     * State of all the guards for the metrics
+     *
+     * @return snapshots
+     */
+    public List<EndpointGuard.Snapshot> snapshot() {
+        List<EndpointGuard.Snapshot> snapshots = new ArrayList<>(guards.size());
+        guards.values().forEach(guard -> snapshots.add(guard.snapshot()));
+        return snapshots;
+    }
+
+}
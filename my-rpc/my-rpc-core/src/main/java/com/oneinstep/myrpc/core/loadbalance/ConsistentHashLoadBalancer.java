@@ -0,0 +1,156 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consistent hash on one argument of the call
+ * <p>
+ * Calls with the same argument go to the same endpoint as long as it is there, and only the keys
+ * of a removed endpoint move when the endpoints change. Every endpoint owns a number of virtual nodes
+ * on the ring. The ring is rebuilt when the registry publishes a new endpoint snapshot, larger or smaller.
+ * The candidates of a retry or of a skipped provider are a subset of the snapshot, they are selected
+ * on the ring of the snapshot by skipping the virtual nodes of the other endpoints, which is what a ring
+ * of the candidates would select, without rebuilding it.
+ * The weights and the warm-up of the providers are ignored, every endpoint owns the same share of the keys.
+ * </p>
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "consistent-hash";
+
+    private static final int VIRTUAL_NODES = 160;
+
+    /**
+     * index of the argument the key is taken from
+     */
+    private final int argumentIndex;
+
+    private volatile Ring ring;
+
+    public ConsistentHashLoadBalancer(int argumentIndex) {
+        this.argumentIndex = argumentIndex;
+    }
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, Method method, Object[] args) {
+        return ringOf(endpoints).select(hash(args));
+    }
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, List<Endpoint> candidates, Method method, Object[] args) {
+        Ring current = ringOf(endpoints);
+        if (candidates == endpoints) {
+            return current.select(hash(args));
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        return current.select(hash(args), new HashSet<>(candidates));
+    }
+
+    /**
+     * Get the ring of the snapshot, the snapshots are immutable, a new list means the endpoints have changed
+     */
+    private Ring ringOf(List<Endpoint> endpoints) {
+        Ring current = ring;
+        if (current == null || current.endpoints != endpoints) {
+            current = new Ring(endpoints);
+            ring = current;
+        }
+        return current;
+    }
+
+    private long hash(Object[] args) {
+        Object key = args != null && argumentIndex < args.length ? args[argumentIndex] : null;
+        return hash(String.valueOf(key));
+    }
+
+    /**
+     * 64-bit FNV-1a with a final mix, spreads short and similar keys over the ring
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Ring {
+
+        private final List<Endpoint> endpoints;
+
+        /**
+         * sorted virtual node hashes, and the endpoints they belong to
+         */
+        private final long[] hashes;
+
+        private final Endpoint[] owners;
+
+        private Ring(List<Endpoint> endpoints) {
+            this.endpoints = endpoints;
+            int size = endpoints.size() * VIRTUAL_NODES;
+            long[][] nodes = new long[size][];
+            int n = 0;
+            for (int i = 0; i < endpoints.size(); i++) {
+                String address = endpoints.get(i).getAddress();
+                for (int v = 0; v < VIRTUAL_NODES; v++) {
+                    nodes[n++] = new long[]{hash(address + "#" + v), i};
+                }
+            }
+            Arrays.sort(nodes, (x, y) -> Long.compare(x[0], y[0]));
+            this.hashes = new long[size];
+            this.owners = new Endpoint[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = nodes[i][0];
+                owners[i] = endpoints.get((int) nodes[i][1]);
+            }
+        }
+
+        private Endpoint select(long hash) {
+            return owners[indexOf(hash)];
+        }
+
+        /**
+         * Select among a subset of the endpoints of the ring
+         *
+         * @param hash       hash of the key
+         * @param candidates endpoints which may be selected, all on the ring
+         * @return the first candidate clockwise from the key
+         */
+        private Endpoint select(long hash, Set<Endpoint> candidates) {
+            int index = indexOf(hash);
+            for (int i = 0; i < owners.length; i++) {
+                Endpoint owner = owners[(index + i) % owners.length];
+                if (candidates.contains(owner)) {
+                    return owner;
+                }
+            }
+            throw new IllegalArgumentException("No candidate on the ring: " + candidates);
+        }
+
+        /**
+         * @return index of the first virtual node clockwise from the key
+         */
+        private int indexOf(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == hashes.length ? 0 : index;
+        }
+    }
+
+}
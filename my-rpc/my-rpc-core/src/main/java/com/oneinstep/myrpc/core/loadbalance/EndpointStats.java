@@ -0,0 +1,79 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side statistics of a provider endpoint, shared by all the services calling it
+ * <p>
+ * The number of calls in flight and an exponentially weighted moving average of the latency.
+ * The average is updated without a lock, a lost update under contention only drops one sample.
+ * </p>
+ */
+public class EndpointStats {
+
+    /**
+     * weight of the newest sample
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * host:port -> stats, kept across the registry refreshes
+     */
+    private static final Map<String, EndpointStats> STATS = new ConcurrentHashMap<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile double latencyEwmaNanos;
+
+    /**
+     * Get the stats of the endpoint
+     *
+     * @param endpoint endpoint
+     * @return endpoint stats
+     */
+    public static EndpointStats of(Endpoint endpoint) {
+        EndpointStats stats = STATS.get(endpoint.getAddress());
+        return stats != null ? stats : STATS.computeIfAbsent(endpoint.getAddress(), k -> new EndpointStats());
+    }
+
+    /**
+     * A call to the endpoint starts
+     */
+    public void begin() {
+        active.incrementAndGet();
+    }
+
+    /**
+     * A call to the endpoint ends, successfully or not
+     *
+     * @param elapsedNanos latency of the call
+     */
+    public void end(long elapsedNanos) {
+        active.decrementAndGet();
+        double ewma = latencyEwmaNanos;
+        latencyEwmaNanos = ewma == 0 ? elapsedNanos : ewma + ALPHA * (elapsedNanos - ewma);
+    }
+
+    /**
+     * Number of calls in flight
+     *
+     * @return active calls
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Moving average of the latency, 0 if no call has completed yet
+     *
+     * @return latency in nanoseconds
+     */
+    public double getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+
+}
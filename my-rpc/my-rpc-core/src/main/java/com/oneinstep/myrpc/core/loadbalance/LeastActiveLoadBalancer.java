@@ -0,0 +1,52 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The endpoint with the fewest calls in flight from this client per unit of effective weight,
+ * the ties are broken randomly in proportion to the weights, so a warming up provider takes its share gradually
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "least-active";
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, Method method, Object[] args) {
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint selected = null;
+        long leastActive = 0;
+        long leastWeight = 1;
+        long tieWeight = 0;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get(i);
+            long active = EndpointStats.of(endpoint).getActive();
+            long weight = Math.max(1, endpoint.getEffectiveWeight());
+            // active / weight < leastActive / leastWeight, without the division
+            long diff = selected == null ? -1 : Long.compare(active * leastWeight, leastActive * weight);
+            if (diff < 0) {
+                selected = endpoint;
+                leastActive = active;
+                leastWeight = weight;
+                tieWeight = weight;
+            } else if (diff == 0) {
+                // weighted reservoir sampling over the endpoints with the same load
+                tieWeight += weight;
+                if (random.nextLong(tieWeight) < weight) {
+                    selected = endpoint;
+                    leastActive = active;
+                    leastWeight = weight;
+                }
+            }
+        }
+        return selected;
+    }
+
+}
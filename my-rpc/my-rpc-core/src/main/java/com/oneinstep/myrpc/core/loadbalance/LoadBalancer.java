@@ -0,0 +1,42 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Load balancer
+ * <p>
+ * Selects the provider endpoint of one call. Every @RpcReference gets its own instance,
+ * so a balancer may keep state (a counter, a hash ring) for the service it belongs to.
+ * The implementations are created by {@link LoadBalancerFactory} by name.
+ * </p>
+ */
+public interface LoadBalancer {
+
+    /**
+     * Select an endpoint
+     *
+     * @param endpoints the current endpoints of the service, immutable and never empty
+     * @param method    the invoked interface method
+     * @param args      the arguments of the call, may be null
+     * @return selected endpoint
+     */
+    Endpoint select(List<Endpoint> endpoints, Method method, Object[] args);
+
+    /**
+     * Select an endpoint among some of the current endpoints,
+     * the ones a retry has not tried yet or the ones left after skipping unreachable providers
+     *
+     * @param endpoints  the current endpoints of the service, immutable and never empty
+     * @param candidates the endpoints which may be selected, a non-empty subset of endpoints
+     * @param method     the invoked interface method
+     * @param args       the arguments of the call, may be null
+     * @return selected endpoint, one of the candidates
+     */
+    default Endpoint select(List<Endpoint> endpoints, List<Endpoint> candidates, Method method, Object[] args) {
+        return select(candidates, method, args);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.exception.RpcException;
+import lombok.experimental.UtilityClass;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Load balancer factory
+ * Creates a load balancer by the name configured on @RpcReference, custom balancers can be registered by name
+ */
+@UtilityClass
+public class LoadBalancerFactory {
+
+    /**
+     * name -> constructor, the argument is the hash argument index of the reference
+     */
+    private static final Map<String, IntFunction<LoadBalancer>> LOAD_BALANCERS = new ConcurrentHashMap<>();
+
+    static {
+        register(RandomLoadBalancer.NAME, hashArgument -> new RandomLoadBalancer());
+        register(RoundRobinLoadBalancer.NAME, hashArgument -> new RoundRobinLoadBalancer());
+        register(LeastActiveLoadBalancer.NAME, hashArgument -> new LeastActiveLoadBalancer());
+        register(ConsistentHashLoadBalancer.NAME, ConsistentHashLoadBalancer::new);
+        register(P2cLoadBalancer.NAME, hashArgument -> new P2cLoadBalancer());
+    }
+
+    /**
+     * Register a load balancer
+     *
+     * @param name        load balancer name
+     * @param constructor creates an instance, receives the hash argument index
+     */
+    public static void register(String name, IntFunction<LoadBalancer> constructor) {
+        LOAD_BALANCERS.put(name, constructor);
+    }
+
+    /**
+     * Create a load balancer
+     *
+     * @param name         load balancer name
+     * @param hashArgument index of the argument used by the hash based balancers
+     * @return new load balancer
+     */
+    public static LoadBalancer create(String name, int hashArgument) {
+        IntFunction<LoadBalancer> constructor = LOAD_BALANCERS.get(name);
+        if (constructor == null) {
+            throw new RpcException("Unknown load balancer: " + name);
+        }
+        return constructor.apply(hashArgument);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices
+ * <p>
+ * Picks two endpoints at random and takes the one with the lower cost, the cost is the latency moving average
+ * multiplied by the calls in flight plus one, divided by the weight. An endpoint without a latency sample yet
+ * costs nothing, so new providers are probed right away.
+ * </p>
+ */
+public class P2cLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "p2c";
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, Method method, Object[] args) {
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = endpoints.get(first);
+        Endpoint b = endpoints.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private static double cost(Endpoint endpoint) {
+        EndpointStats stats = EndpointStats.of(endpoint);
+        return stats.getLatencyEwmaNanos() * (stats.getActive() + 1) / Math.max(1, endpoint.getEffectiveWeight());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted random, the chance of an endpoint is proportional to its effective weight
+ */
+public class RandomLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "random";
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, Method method, Object[] args) {
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+        // the effective weight is lower while a provider warms up
+        int firstWeight = endpoints.get(0).getEffectiveWeight();
+        int totalWeight = firstWeight;
+        boolean sameWeight = true;
+        for (int i = 1; i < size; i++) {
+            int weight = endpoints.get(i).getEffectiveWeight();
+            totalWeight += weight;
+            sameWeight &= weight == firstWeight;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sameWeight || totalWeight <= 0) {
+            return endpoints.get(random.nextInt(size));
+        }
+        int offset = random.nextInt(totalWeight);
+        for (int i = 0; i < size; i++) {
+            offset -= endpoints.get(i).getEffectiveWeight();
+            if (offset < 0) {
+                return endpoints.get(i);
+            }
+        }
+        return endpoints.get(size - 1);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.oneinstep.myrpc.core.loadbalance;
+
+import com.oneinstep.myrpc.core.registry.Endpoint;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Smooth weighted round-robin on the effective weights
+ * <p>
+ * Every call adds its effective weight to the current weight of each endpoint, selects the endpoint with the
+ * highest current weight and subtracts the total from it, so the endpoints are interleaved in proportion to
+ * their weights and a warming up provider gets a growing share. While the weights are all the same,
+ * the common case, the endpoints are taken in turn by a counter without a lock.
+ * </p>
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "round-robin";
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    /**
+     * endpoint -> current weight, guarded by this
+     */
+    private final Map<Endpoint, int[]> currentWeights = new HashMap<>();
+
+    /**
+     * the snapshot the current weights are kept for, guarded by this
+     */
+    private List<Endpoint> snapshot;
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, Method method, Object[] args) {
+        return select(endpoints, endpoints, method, args);
+    }
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints, List<Endpoint> candidates, Method method, Object[] args) {
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        int firstWeight = candidates.get(0).getEffectiveWeight();
+        boolean sameWeight = true;
+        for (int i = 1; i < size && sameWeight; i++) {
+            sameWeight = candidates.get(i).getEffectiveWeight() == firstWeight;
+        }
+        if (sameWeight) {
+            return candidates.get((index.getAndIncrement() & Integer.MAX_VALUE) % size);
+        }
+        return selectWeighted(endpoints, candidates);
+    }
+
+    private synchronized Endpoint selectWeighted(List<Endpoint> endpoints, List<Endpoint> candidates) {
+        // forget the endpoints removed from the registry
+        if (endpoints != snapshot) {
+            snapshot = endpoints;
+            currentWeights.keySet().retainAll(new HashSet<>(endpoints));
+        }
+        int totalWeight = 0;
+        Endpoint selected = null;
+        int[] selectedWeight = null;
+        for (Endpoint endpoint : candidates) {
+            int weight = Math.max(0, endpoint.getEffectiveWeight());
+            int[] current = currentWeights.computeIfAbsent(endpoint, key -> new int[1]);
+            current[0] += weight;
+            totalWeight += weight;
+            if (selectedWeight == null || current[0] > selectedWeight[0]) {
+                selected = endpoint;
+                selectedWeight = current;
+            }
+        }
+        selectedWeight[0] -= totalWeight;
+        return selected;
+    }
+
+}
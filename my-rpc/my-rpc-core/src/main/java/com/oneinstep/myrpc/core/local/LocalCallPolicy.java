@@ -0,0 +1,32 @@
+package com.oneinstep.myrpc.core.local;
+
+/**
+ * How a proxy calls a service whose provider lives in the same JVM, configured by my-rpc.local-call
+ */
+public enum LocalCallPolicy {
+
+    /**
+     * Always call over the network, as if the provider was remote
+     */
+    OFF,
+    /**
+     * Invoke the service directly, the arguments and the result are passed by reference
+     */
+    DIRECT,
+    /**
+     * Invoke the service directly with copies of the arguments and of the result made by the serializer,
+     * so the caller and the service never share mutable objects, as with a remote call
+     */
+    COPY;
+
+    /**
+     * Get the policy by its configured name
+     *
+     * @param name off, direct or copy
+     * @return policy
+     */
+    public static LocalCallPolicy of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+}
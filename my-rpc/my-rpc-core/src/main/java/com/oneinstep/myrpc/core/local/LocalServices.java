@@ -0,0 +1,186 @@
+package com.oneinstep.myrpc.core.local;
+
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.exception.ServiceInvocationException;
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import com.oneinstep.myrpc.core.serialize.Serializer;
+import com.oneinstep.myrpc.core.serialize.SerializerFactory;
+import com.oneinstep.myrpc.core.server.InvokerTable;
+import com.oneinstep.myrpc.core.server.MethodInvoker;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * The services exported by the RPC server of this JVM, called in process by the proxies of the same JVM
+ * <p>
+ * A call to a service whose provider lives in the same Spring context skips the registry, the connection
+ * and the codec: the proxy runs the invoker the server has built, on the calling thread.
+ * {@link LocalCallPolicy} decides whether the arguments and the result are copied, it is off by default.
+ * An exception of the service is reported as by a remote call, with a {@link ServiceInvocationException},
+ * through the returned future for an asynchronous method.
+ * The timeout, the cluster strategy and the circuit breaker do not apply, there is no network to fail.
+ * </p>
+ */
+@Slf4j
+@Component
+public class LocalServices {
+
+    /**
+     * 同一个进程内的调用方式：off / direct / copy
+     */
+    @Value("${my-rpc.local-call:off}")
+    private String policyName;
+
+    /**
+     * copy 模式下复制参数和结果使用的序列化方式
+     */
+    @Value("${my-rpc.serializer:binary}")
+    private String serializerName;
+
+    @Getter
+    private LocalCallPolicy policy;
+
+    private Serializer serializer;
+
+    /**
+     * service -> invokers of the server, the descriptors are cached per interface and version,
+     * so the provider and the consumer hold the same instance
+     */
+    private final Map<ServiceDescriptor, InvokerTable> exported = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        policy = LocalCallPolicy.of(policyName);
+        serializer = SerializerFactory.getSerializer(serializerName);
+        log.info("Local calls: {}", policy);
+    }
+
+    /**
+     * Export a service of the server of this JVM
+     *
+     * @param descriptor   service descriptor
+     * @param invokerTable invokers of the server
+     */
+    public void export(ServiceDescriptor descriptor, InvokerTable invokerTable) {
+        exported.put(descriptor, invokerTable);
+    }
+
+    /**
+     * Remove the services exported by the server, called when it shuts down, the proxies go over the network again
+     */
+    public void clear() {
+        exported.clear();
+    }
+
+    /**
+     * Find the invoker of a method exported in this JVM
+     *
+     * @param descriptor service descriptor
+     * @param method     interface method
+     * @return invoker, null if the method must be called over the network
+     */
+    public MethodInvoker find(ServiceDescriptor descriptor, Method method) {
+        if (policy == LocalCallPolicy.OFF || exported.isEmpty()) {
+            return null;
+        }
+        InvokerTable invokerTable = exported.get(descriptor);
+        if (invokerTable == null) {
+            return null;
+        }
+        MethodInvoker invoker = invokerTable.getInvoker(descriptor.getServiceId(), descriptor.getMethodId(method));
+        if (invoker != null) {
+            return invoker;
+        }
+        // the service id collides with another service, the invoker is only found by names
+        return invokerTable.getInvoker(descriptor.getServiceName(), descriptor.getVersion(), method.getName(),
+                method.getParameterTypes());
+    }
+
+    /**
+     * Invoke the method on the calling thread
+     *
+     * @param invoker invoker returned by {@link #find}
+     * @param method  interface method
+     * @param args    arguments
+     * @return result, copied unless the policy is direct
+     */
+    public Object invoke(MethodInvoker invoker, Method method, Object[] args) {
+        boolean copy = policy == LocalCallPolicy.COPY;
+        Object[] arguments = copy ? copyArguments(args) : args;
+        Object result;
+        try {
+            result = invoker.invoke(arguments);
+        } catch (Throwable e) {
+            // 异步方法的异常和远程调用一样通过 future 返回
+            if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+                return CompletableFuture.failedFuture(failure(e));
+            }
+            throw failure(e);
+        }
+        if (result instanceof CompletableFuture<?> future) {
+            return future.handle((value, throwable) -> {
+                if (throwable != null) {
+                    throw failure(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                }
+                return copy ? copyResult(value) : value;
+            });
+        }
+        if (invoker.isStreaming()) {
+            // 流式方法的元素在消费时逐个复制
+            LocalStream stream = new LocalStream(result, copy ? this::copyResult : UnaryOperator.identity());
+            return method.getReturnType() == Stream.class ? stream.toStream() : stream;
+        }
+        return copy ? copyResult(result) : result;
+    }
+
+    private Object[] copyArguments(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        boolean immutable = true;
+        for (Object arg : args) {
+            immutable &= isImmutable(arg);
+        }
+        if (immutable) {
+            return args;
+        }
+        RpcRequest request = new RpcRequest();
+        request.setParameters(args);
+        return serializer.deserialize(serializer.serialize(request), RpcRequest.class).getParameters();
+    }
+
+    private Object copyResult(Object result) {
+        if (isImmutable(result)) {
+            return result;
+        }
+        RpcResponse response = new RpcResponse();
+        response.setResult(result);
+        return serializer.deserialize(serializer.serialize(response), RpcResponse.class).getResult();
+    }
+
+    /**
+     * Values shared safely without a copy
+     */
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Boolean || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value instanceof Character || value instanceof Enum;
+    }
+
+    private static ServiceInvocationException failure(Throwable cause) {
+        return new ServiceInvocationException(cause.toString(), cause);
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.oneinstep.myrpc.core.local;
+
+import com.oneinstep.myrpc.core.exception.ServiceInvocationException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.UnaryOperator;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The result of a server-streaming method called in process, returned by the proxy as the Iterator of the method
+ * <p>
+ * Behaves as the stream of a remote call: the elements are pulled from the provider when the caller takes them,
+ * an exception of the provider's iterator fails with a {@link ServiceInvocationException}, and the Stream or the
+ * AutoCloseable iterator returned by the service is closed when the stream is over, fails or is closed.
+ * </p>
+ */
+@Slf4j
+class LocalStream implements Iterator<Object>, AutoCloseable {
+
+    private final Iterator<?> iterator;
+
+    private final AutoCloseable resource;
+
+    /**
+     * applied to every element, the copy of the copy policy
+     */
+    private final UnaryOperator<Object> mapper;
+
+    private boolean closed;
+
+    /**
+     * @param result Iterator or Stream returned by the service, null for an empty stream
+     * @param mapper applied to every element
+     */
+    LocalStream(Object result, UnaryOperator<Object> mapper) {
+        if (result instanceof BaseStream<?, ?> stream) {
+            this.resource = stream;
+            this.iterator = stream.iterator();
+        } else if (result instanceof Iterator<?> it) {
+            this.resource = it instanceof AutoCloseable closeable ? closeable : null;
+            this.iterator = it;
+        } else {
+            this.resource = null;
+            this.iterator = Collections.emptyIterator();
+        }
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        boolean hasNext;
+        try {
+            hasNext = iterator.hasNext();
+        } catch (RuntimeException e) {
+            throw fail(e);
+        }
+        if (!hasNext) {
+            close();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return mapper.apply(iterator.next());
+        } catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.warn("Failed to close the local stream", e);
+            }
+        }
+    }
+
+    /**
+     * @return a Stream over the elements, closing this one when it is closed
+     */
+    Stream<Object> toStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    private ServiceInvocationException fail(RuntimeException e) {
+        close();
+        return new ServiceInvocationException(e.toString(), e);
+    }
+
+}
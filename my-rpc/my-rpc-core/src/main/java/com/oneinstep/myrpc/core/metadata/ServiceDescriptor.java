@@ -0,0 +1,127 @@
+package com.oneinstep.myrpc.core.metadata;
+
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The numeric ids of a service interface and its methods
+ * <p>
+ * The methods are sorted by signature and numbered from 0, the service id is a fingerprint of the
+ * service name, the version and all the signatures. Provider and consumer compute the same table from
+ * the same interface, so a request only needs to carry the two ids. If the interface differs between
+ * the two sides the service id differs as well, and the provider answers that it does not know the id.
+ * </p>
+ */
+@Getter
+public class ServiceDescriptor {
+
+    private static final Map<String, ServiceDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+
+    private static final Map<Integer, ServiceDescriptor> DESCRIPTORS_BY_ID = new ConcurrentHashMap<>();
+
+    private final String serviceName;
+
+    private final String version;
+
+    /**
+     * fingerprint of the service, never 0
+     */
+    private final int serviceId;
+
+    /**
+     * methods indexed by method id
+     */
+    private final Method[] methods;
+
+    private final Map<Method, Integer> methodIds;
+
+    private ServiceDescriptor(Class<?> interfaceClass, String version) {
+        this.serviceName = interfaceClass.getName();
+        this.version = version;
+
+        SortedMap<String, Method> sorted = new TreeMap<>();
+        for (Method method : interfaceClass.getMethods()) {
+            sorted.putIfAbsent(signature(method), method);
+        }
+        this.methods = sorted.values().toArray(new Method[0]);
+        Map<Method, Integer> ids = new HashMap<>();
+        for (int i = 0; i < methods.length; i++) {
+            ids.put(methods[i], i);
+        }
+        this.methodIds = Collections.unmodifiableMap(ids);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update((serviceName + "#" + version).getBytes(StandardCharsets.UTF_8));
+        sorted.keySet().forEach(signature -> crc32.update(signature.getBytes(StandardCharsets.UTF_8)));
+        int fingerprint = (int) crc32.getValue();
+        this.serviceId = fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Get the descriptor of the service, computed once per interface and version
+     *
+     * @param interfaceClass service interface
+     * @param version        service version
+     * @return service descriptor
+     */
+    public static ServiceDescriptor of(Class<?> interfaceClass, String version) {
+        return DESCRIPTORS.computeIfAbsent(interfaceClass.getName() + "#" + version, k -> {
+            ServiceDescriptor descriptor = new ServiceDescriptor(interfaceClass, version);
+            DESCRIPTORS_BY_ID.putIfAbsent(descriptor.getServiceId(), descriptor);
+            return descriptor;
+        });
+    }
+
+    /**
+     * Find a descriptor computed before by its service id
+     *
+     * @param serviceId service id
+     * @return service descriptor, null if no descriptor of the id has been computed in this JVM
+     */
+    public static ServiceDescriptor find(int serviceId) {
+        return DESCRIPTORS_BY_ID.get(serviceId);
+    }
+
+    /**
+     * Get the id of the method
+     *
+     * @param method interface method
+     * @return method id, -1 if the method does not belong to the service
+     */
+    public int getMethodId(Method method) {
+        return methodIds.getOrDefault(method, -1);
+    }
+
+    /**
+     * Whether the method is a server-streaming method: it returns an {@link Iterator} or a {@link Stream},
+     * the provider sends the elements one by one instead of one result
+     *
+     * @param method interface method
+     * @return true if the results are streamed
+     */
+    public static boolean isStreaming(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return returnType == Iterator.class || returnType == Stream.class;
+    }
+
+    /**
+     * Method signature, e.g. sayHello(java.lang.String,int)
+     *
+     * @param method method
+     * @return signature
+     */
+    public static String signature(Method method) {
+        StringJoiner joiner = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            joiner.add(parameterType.getName());
+        }
+        return joiner.toString();
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.oneinstep.myrpc.core.registry;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * A provider endpoint published in the registry, immutable
+ * <p>
+ * The node data is URL style: host:port?weight=100&amp;protocol=my-rpc&amp;serializers=binary;jdk&amp;serviceId=..&amp;methods=..&amp;warmup=..&amp;warmupMs=..&amp;unixSocket=..
+ * so the consumers get the provider metadata together with the address.
+ * The list values are separated by semicolons because the method signatures contain commas.
+ * A plain host:port is accepted as well and gets the defaults.
+ * </p>
+ */
+@Getter
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
+public class Endpoint {
+
+    /**
+     * weight of the endpoints that do not publish one
+     */
+    public static final int DEFAULT_WEIGHT = 100;
+
+    public static final String DEFAULT_PROTOCOL = "my-rpc";
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * relative capacity of the provider, used by the weighted load balancers
+     */
+    private final int weight;
+
+    private final String protocol;
+
+    /**
+     * names of the serializers the provider accepts, empty if not published
+     */
+    private final List<String> serializers;
+
+    /**
+     * service id computed by the provider, 0 if not published
+     * the consumer sends the method names instead of the ids when it differs from its own
+     */
+    private final int serviceId;
+
+    /**
+     * method signatures in method id order, empty if not published
+     */
+    private final List<String> methods;
+
+    /**
+     * when the provider started serving, epoch milliseconds, 0 if not published
+     */
+    private final long warmupTimestamp;
+
+    /**
+     * warm-up window in milliseconds, the effective weight grows linearly from the start to the full weight
+     */
+    private final long warmupMs;
+
+    /**
+     * path of the Unix domain socket the provider also listens on, null if not published.
+     * A consumer on the same host connects to it instead of host:port
+     */
+    private final String socketPath;
+
+    /**
+     * host:port
+     */
+    @EqualsAndHashCode.Exclude
+    private final String address;
+
+    public Endpoint(String host, int port) {
+        this(host, port, DEFAULT_WEIGHT);
+    }
+
+    public Endpoint(String host, int port, int weight) {
+        this(host, port, weight, DEFAULT_PROTOCOL, List.of(), 0, List.of(), 0, 0, null);
+    }
+
+    @Builder
+    private Endpoint(String host, int port, int weight, String protocol, List<String> serializers, int serviceId,
+                     List<String> methods, long warmupTimestamp, long warmupMs, String socketPath) {
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+        this.protocol = protocol == null ? DEFAULT_PROTOCOL : protocol;
+        this.serializers = serializers == null ? List.of() : List.copyOf(serializers);
+        this.serviceId = serviceId;
+        this.methods = methods == null ? List.of() : List.copyOf(methods);
+        this.warmupTimestamp = warmupTimestamp;
+        this.warmupMs = warmupMs;
+        this.socketPath = socketPath == null || socketPath.isEmpty() ? null : socketPath;
+        this.address = host + ":" + port;
+    }
+
+    /**
+     * Parse the node data of the registry
+     *
+     * @param data host:port, optionally followed by ?key=value&amp;key=value
+     * @return endpoint, null if the data is malformed
+     */
+    public static Endpoint parse(String data) {
+        int question = data.indexOf('?');
+        String address = question < 0 ? data : data.substring(0, question);
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            return null;
+        }
+        try {
+            EndpointBuilder builder = builder()
+                    .host(address.substring(0, colon))
+                    .port(Integer.parseInt(address.substring(colon + 1).trim()))
+                    .weight(DEFAULT_WEIGHT);
+            if (question >= 0) {
+                for (String parameter : data.substring(question + 1).split("&")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals > 0) {
+                        setParameter(builder, parameter.substring(0, equals),
+                                URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void setParameter(EndpointBuilder builder, String key, String value) {
+        switch (key) {
+            case "weight" -> builder.weight(Integer.parseInt(value));
+            case "protocol" -> builder.protocol(value);
+            case "serializers" -> builder.serializers(split(value));
+            case "serviceId" -> builder.serviceId(Integer.parseInt(value));
+            case "methods" -> builder.methods(split(value));
+            case "warmup" -> builder.warmupTimestamp(Long.parseLong(value));
+            case "warmupMs" -> builder.warmupMs(Long.parseLong(value));
+            case "unixSocket" -> builder.socketPath(value);
+            default -> {
+                // unknown keys are published by newer providers, ignore them
+            }
+        }
+    }
+
+    private static List<String> split(String value) {
+        return value.isEmpty() ? List.of() : Arrays.asList(value.split(";"));
+    }
+
+    /**
+     * The node data published in the registry
+     *
+     * @return URL style data
+     */
+    public String toData() {
+        StringJoiner joiner = new StringJoiner("&", address + "?", "");
+        joiner.add("weight=" + weight);
+        joiner.add("protocol=" + encode(protocol));
+        if (!serializers.isEmpty()) {
+            joiner.add("serializers=" + encode(String.join(";", serializers)));
+        }
+        if (serviceId != 0) {
+            joiner.add("serviceId=" + serviceId);
+        }
+        if (!methods.isEmpty()) {
+            joiner.add("methods=" + encode(String.join(";", methods)));
+        }
+        if (warmupTimestamp > 0) {
+            joiner.add("warmup=" + warmupTimestamp);
+        }
+        if (warmupMs > 0) {
+            joiner.add("warmupMs=" + warmupMs);
+        }
+        if (socketPath != null) {
+            joiner.add("unixSocket=" + encode(socketPath));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * The weight during the warm-up window, grows linearly from 1 to the full weight.
+     * The start time comes from the provider clock, a skew between the hosts shifts the ramp by the same amount.
+     *
+     * @return effective weight
+     */
+    public int getEffectiveWeight() {
+        if (warmupMs <= 0 || warmupTimestamp <= 0) {
+            return weight;
+        }
+        long uptime = System.currentTimeMillis() - warmupTimestamp;
+        if (uptime >= warmupMs) {
+            return weight;
+        }
+        return (int) Math.max(1, weight * Math.max(0, uptime) / warmupMs);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.oneinstep.myrpc.core.registry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The provider endpoints of one service, kept up to date by ZooKeeper watches
+ * <p>
+ * A {@link CuratorCache} mirrors the children of the service node, every change event rebuilds an
+ * immutable endpoint list and publishes it through a volatile field, so the callers read the endpoints
+ * without touching ZooKeeper or taking a lock. While ZooKeeper is unreachable the last list is kept.
+ * The first load is exposed as a future, so an asynchronous caller composes on it instead of waiting.
+ * </p>
+ */
+@Slf4j
+class ServiceDirectory implements AutoCloseable {
+
+    private final String servicePath;
+
+    private final CuratorCache cache;
+
+    /**
+     * completed by the initial load, or by the timeout with the endpoints loaded so far
+     */
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    private volatile boolean initialized;
+
+    private volatile List<Endpoint> endpoints = List.of();
+
+    ServiceDirectory(CuratorFramework client, String servicePath) {
+        this.servicePath = servicePath;
+        this.cache = CuratorCache.build(client, servicePath);
+        cache.listenable().addListener(CuratorCacheListener.builder()
+                .forAll((type, oldData, data) -> refresh())
+                .forInitialized(() -> {
+                    refresh();
+                    initialized = true;
+                    ready.complete(null);
+                })
+                .build());
+    }
+
+    /**
+     * Start watching without waiting, {@link #whenReady()} completes once the current children are loaded
+     * or the timeout expires
+     *
+     * @param timeoutMs max time to wait for the initial load
+     */
+    void start(long timeoutMs) {
+        cache.start();
+        ready.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS).thenRun(() -> {
+            if (!initialized) {
+                log.warn("Service directory {} is not loaded in {} ms", servicePath, timeoutMs);
+            }
+        });
+    }
+
+    /**
+     * The first load
+     *
+     * @return future completed when the endpoints can be read
+     */
+    CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * The current endpoints
+     *
+     * @return immutable snapshot
+     */
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    private void refresh() {
+        List<Endpoint> snapshot = cache.stream()
+                .filter(childData -> !servicePath.equals(childData.getPath()))
+                .map(ChildData::getData)
+                .filter(Objects::nonNull)
+                .map(bytes -> Endpoint.parse(new String(bytes, StandardCharsets.UTF_8)))
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (!snapshot.equals(endpoints)) {
+            endpoints = snapshot;
+            log.info("Service endpoints of {} changed: {}", servicePath, snapshot);
+        }
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+}
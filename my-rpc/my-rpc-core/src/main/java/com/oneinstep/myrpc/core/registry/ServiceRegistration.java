@@ -0,0 +1,11 @@
+package com.oneinstep.myrpc.core.registry;
+
+/**
+ * A service exported by this provider
+ *
+ * @param serviceName service interface name
+ * @param version     service version
+ * @param endpoint    endpoint and metadata published for the service
+ */
+public record ServiceRegistration(String serviceName, String version, Endpoint endpoint) {
+}
@@ -1,39 +1,61 @@
 package com.oneinstep.myrpc.core.registry;
 
+import com.oneinstep.myrpc.core.exception.RpcException;
 import com.oneinstep.myrpc.core.exception.ServiceNotFoundException;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.curator.framework.api.transaction.OperationType;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.Watcher;
-import org.apache.zookeeper.data.Stat;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 
 /**
- * Service registration
+ * Service registration and discovery
+ * <p>
+ * The providers of a service are ephemeral sequential nodes under /my-rpc/serviceName#version,
+ * the node data is the address. Consumers look the endpoints up in a local {@link ServiceDirectory}
+ * per service, ZooKeeper is only read when the children change.
+ * </p>
  */
 @Component
 @Slf4j
 public class ServiceRegistry {
 
+    private static final String ROOT = "/my-rpc";
+
+    private static final String ROOT_PATH = ROOT + "/";
+
     @Value("${zookeeper.address}")
     private String zkAddress;
 
-    private final Random random = new Random();
+    /**
+     * 首次订阅服务时等待 ZooKeeper 返回当前节点的最长时间
+     */
+    @Value("${my-rpc.registry.init-timeout-ms:3000}")
+    private long initTimeoutMs;
 
-    private static final Map<String, List<String>> CACHED_ADDRESS_LIST = new ConcurrentHashMap<>();
+    /**
+     * serviceName#version -> service directory
+     */
+    private final Map<String, ServiceDirectory> directories = new ConcurrentHashMap<>();
     /**
      * ZooKeeper client
      */
@@ -54,87 +76,155 @@ public class ServiceRegistry {
     @PreDestroy
     public void close() {
         log.info("Closing ZooKeeper client");
+        directories.values().forEach(ServiceDirectory::close);
+        directories.clear();
         client.close();
     }
 
     /**
-     * Register the service to ZooKeeper
+     * Register the services to ZooKeeper in one transaction
+     * The missing service nodes are created in the same transaction, the existing ones are read with one getChildren
      *
-     * @param serviceName    service name
-     * @param version        service version
-     * @param serviceAddress service address
+     * @param registrations services exported by this provider
+     * @return paths of the created provider nodes
      * @throws Exception exception
      */
-    public void register(String serviceName, String version, String serviceAddress) throws Exception {
-        String serviceNode = serviceName + "#" + version;
-        // Create a ephemeral sequential node, When the connection is closed, the node will be deleted automatically
-        // The node name is like: /my-rpc/com.oneinstep.myrpc.api.ExampleService/address-0000000001
-        client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
-                .forPath("/my-rpc/" + serviceNode + "/" + "address-", serviceAddress.getBytes());
-        log.info("Service registered: service:{},version:{} => {}", serviceName, version, serviceAddress);
-
-        // watch the service node, if the service node is deleted, the client will be notified
-        client.getData().usingWatcher((Watcher) watchedEvent -> {
+    public List<String> register(List<ServiceRegistration> registrations) throws Exception {
+        if (registrations.isEmpty()) {
+            return List.of();
+        }
+        for (int attempt = 1; ; attempt++) {
+            Set<String> existingNodes = getServiceNodes();
+            Set<String> creatingNodes = new HashSet<>();
+            List<CuratorOp> operations = new ArrayList<>();
+            for (ServiceRegistration registration : registrations) {
+                String servicePath = servicePath(registration.serviceName(), registration.version());
+                String serviceNode = servicePath.substring(ROOT_PATH.length());
+                if (!existingNodes.contains(serviceNode) && creatingNodes.add(serviceNode)) {
+                    operations.add(client.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(servicePath));
+                }
+                // Create a ephemeral sequential node, When the connection is closed, the node will be deleted automatically
+                // The node name is like: /my-rpc/com.oneinstep.myrpc.api.ExampleService#1.0/address-0000000001
+                operations.add(client.transactionOp().create().withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+                        .forPath(servicePath + "/address-", registration.endpoint().toData().getBytes(StandardCharsets.UTF_8)));
+            }
             try {
-                List<String> addressList = client.getChildren().forPath("/my-rpc/" + serviceNode);
-                // compare and Save the service address to the cache
-                List<String> cache = CACHED_ADDRESS_LIST.get(serviceNode);
-                if (cache == null || !new HashSet<>(cache).containsAll(addressList) || !new HashSet<>(addressList).containsAll(cache)) {
-                    // overwrite cache
-                    CACHED_ADDRESS_LIST.put(serviceNode, addressList);
+                List<String> paths = client.transaction().forOperations(operations).stream()
+                        .filter(result -> result.getType() == OperationType.CREATE
+                                && result.getForPath().endsWith("/address-"))
+                        .map(CuratorTransactionResult::getResultPath)
+                        .toList();
+                log.info("Services registered: {} => {}", registrations.size(), registrations.get(0).endpoint());
+                return paths;
+            } catch (KeeperException.NodeExistsException e) {
+                // another provider created a service node in between, read the nodes again
+                if (attempt >= 3) {
+                    throw e;
                 }
+            }
+        }
+    }
+
+    /**
+     * Delete the provider nodes, the consumers stop sending new calls once they see the change
+     *
+     * @param paths paths returned by {@link #register(List)}
+     */
+    public void unregister(List<String> paths) {
+        for (String path : paths) {
+            try {
+                client.delete().quietly().forPath(path);
             } catch (Exception e) {
-                log.error("Failed to get service address list", e);
+                log.warn("Failed to unregister {}", path, e);
             }
-        }).forPath("/my-rpc/" + serviceNode);
+        }
+        log.info("Services unregistered: {}", paths.size());
     }
 
+    /**
+     * The service nodes under the root, the root is created if it does not exist
+     */
+    private Set<String> getServiceNodes() throws Exception {
+        try {
+            return new HashSet<>(client.getChildren().forPath(ROOT));
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                client.create().creatingParentsIfNeeded().forPath(ROOT);
+            } catch (KeeperException.NodeExistsException ignored) {
+                // created by another provider
+            }
+            return Set.of();
+        }
+    }
 
     /**
-     * Discover the service from ZooKeeper
+     * Discover the service endpoints
+     * The first call of a service subscribes to its node, the later calls only read the local snapshot
      *
      * @param serviceName service name
      * @param version     service version
-     * @return service address
-     * @throws Exception exception
+     * @return immutable snapshot of the endpoints, never empty
      */
-    public String discover(String serviceName, String version) throws Exception {
-        String servicePath = "/my-rpc/" + serviceName + "/" + version;
-        String cacheKey = serviceName + "#" + version;
-        List<String> addressList;
-        boolean fromCache = false;
-        Stat stat = client.checkExists().forPath(servicePath);
-        if (stat == null) {
-            log.error("Service not found: {}", serviceName);
-            throw new ServiceNotFoundException("Service not found: " + serviceName + " version: " + version);
-        }
+    public List<Endpoint> discover(String serviceName, String version) {
+        ServiceDirectory directory = directory(serviceName, version);
         try {
-            addressList = client.getChildren().forPath(servicePath);
-        } catch (KeeperException ke) {
-            // get from cache
-            addressList = CACHED_ADDRESS_LIST.get(cacheKey);
-            fromCache = true;
-            log.info("Service discovered from cache: {}", addressList);
+            directory.whenReady().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Interrupted while subscribing to service: " + serviceName);
+        } catch (ExecutionException e) {
+            throw new RpcException("Failed to subscribe to service: " + serviceName, e.getCause());
+        }
+        return endpoints(directory, serviceName, version);
+    }
+
+    /**
+     * Discover the service endpoints without blocking the caller
+     * The first call of a service completes when its node is loaded, the later calls complete at once
+     *
+     * @param serviceName service name
+     * @param version     service version
+     * @return future of the immutable snapshot of the endpoints, completed with ServiceNotFoundException if empty
+     */
+    public CompletableFuture<List<Endpoint>> discoverAsync(String serviceName, String version) {
+        ServiceDirectory directory = directory(serviceName, version);
+        if (directory.whenReady().isDone()) {
+            try {
+                return CompletableFuture.completedFuture(endpoints(directory, serviceName, version));
+            } catch (ServiceNotFoundException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return directory.whenReady().thenApply(ignored -> endpoints(directory, serviceName, version));
+    }
 
+    private ServiceDirectory directory(String serviceName, String version) {
+        String key = serviceName + "#" + version;
+        ServiceDirectory directory = directories.get(key);
+        if (directory == null) {
+            directory = directories.computeIfAbsent(key, k -> subscribe(serviceName, version));
         }
-        if (addressList == null || addressList.isEmpty()) {
-            log.error("Service not found: {}", serviceName);
+        return directory;
+    }
+
+    private static List<Endpoint> endpoints(ServiceDirectory directory, String serviceName, String version) {
+        List<Endpoint> endpoints = directory.getEndpoints();
+        if (endpoints.isEmpty()) {
             throw new ServiceNotFoundException("Service not found: " + serviceName + " version: " + version);
         }
-        log.info("Service discovered: {}", addressList);
-
-        if (!fromCache) {
-            // compare and Save the service address to the cache
-            List<String> cache = CACHED_ADDRESS_LIST.get(cacheKey);
-            if (cache == null || !new HashSet<>(cache).containsAll(addressList) || !new HashSet<>(addressList).containsAll(cache)) {
-                // overwrite cache
-                CACHED_ADDRESS_LIST.put(cacheKey, addressList);
-            }
-        }
+        return endpoints;
+    }
+
+    /**
+     * Start watching the node of the service, the initial load is not awaited here
+     */
+    private ServiceDirectory subscribe(String serviceName, String version) {
+        ServiceDirectory directory = new ServiceDirectory(client, servicePath(serviceName, version));
+        directory.start(initTimeoutMs);
+        return directory;
+    }
 
-        // 随机获取一个服务地址
-        String addressNode = addressList.get(random.nextInt(addressList.size()));
-        byte[] addressBytes = client.getData().forPath(servicePath + "/" + addressNode);
-        return new String(addressBytes);
+    private static String servicePath(String serviceName, String version) {
+        return ROOT_PATH + serviceName + "#" + version;
     }
-}
\ No newline at end of file
+}
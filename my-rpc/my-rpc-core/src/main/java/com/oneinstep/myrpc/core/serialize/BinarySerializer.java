@@ -0,0 +1,322 @@
+package com.oneinstep.myrpc.core.serialize;
+
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary serializer
+ * <p>
+ * RpcRequest / RpcResponse and the common parameter types (String, primitives and their wrappers, byte[])
+ * are written field by field with a one byte tag, so no class descriptor goes on the wire.
+ * Parameter types are written as class names, or left out when the request carries the method id.
+ * Any other object is written with JDK serialization behind an OBJECT tag.
+ * </p>
+ */
+public class BinarySerializer implements Serializer {
+
+    public static final byte TYPE = 2;
+
+    public static final String NAME = "binary";
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_DOUBLE = 5;
+    private static final byte TAG_FLOAT = 6;
+    private static final byte TAG_SHORT = 7;
+    private static final byte TAG_BYTE = 8;
+    private static final byte TAG_CHAR = 9;
+    private static final byte TAG_BYTES = 10;
+    private static final byte TAG_REQUEST = 11;
+    private static final byte TAG_RESPONSE = 12;
+    private static final byte TAG_OBJECT = 13;
+
+    /**
+     * Lengths up to this are allocated at once, longer ones only when the source holds that many bytes
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * A Java method has at most 255 parameters
+     */
+    private static final int MAX_PARAMETERS = 255;
+
+    /**
+     * Primitive class name -> class, Class.forName can not resolve them
+     */
+    private static final Map<String, Class<?>> PRIMITIVE_CLASSES = Map.of(
+            "int", int.class, "long", long.class, "boolean", boolean.class, "double", double.class,
+            "float", float.class, "short", short.class, "byte", byte.class, "char", char.class,
+            "void", void.class);
+
+    /**
+     * Resolved parameter type cache
+     */
+    private static final Map<String, Class<?>> CLASS_CACHE = new ConcurrentHashMap<>();
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        // ByteBufOutputStream is a DataOutput already, no need to wrap it again
+        writeValue(out instanceof DataOutput dataOutput ? dataOutput : new DataOutputStream(out), obj);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        try {
+            return clazz.cast(readValue(in instanceof DataInput dataInput ? dataInput : new DataInputStream(in)));
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String s) {
+            out.writeByte(TAG_STRING);
+            writeString(out, s);
+        } else if (value instanceof Integer i) {
+            out.writeByte(TAG_INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof Double d) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof Float f) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Short s) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort(s);
+        } else if (value instanceof Byte b) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(b);
+        } else if (value instanceof Character c) {
+            out.writeByte(TAG_CHAR);
+            out.writeChar(c);
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(TAG_BYTES);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof RpcRequest request) {
+            out.writeByte(TAG_REQUEST);
+            writeRequest(out, request);
+        } else if (value instanceof RpcResponse response) {
+            out.writeByte(TAG_RESPONSE);
+            writeResponse(out, response);
+        } else {
+            out.writeByte(TAG_OBJECT);
+            byte[] bytes = SerializeUtil.serialize(value);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private Object readValue(DataInput in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_STRING -> readString(in);
+            case TAG_INT -> in.readInt();
+            case TAG_LONG -> in.readLong();
+            case TAG_BOOLEAN -> in.readBoolean();
+            case TAG_DOUBLE -> in.readDouble();
+            case TAG_FLOAT -> in.readFloat();
+            case TAG_SHORT -> in.readShort();
+            case TAG_BYTE -> in.readByte();
+            case TAG_CHAR -> in.readChar();
+            case TAG_BYTES -> readBytes(in);
+            case TAG_REQUEST -> readRequest(in);
+            case TAG_RESPONSE -> readResponse(in);
+            case TAG_OBJECT -> SerializeUtil.deserialize(readBytes(in), Object.class);
+            default -> throw new IOException("Unknown value tag: " + tag);
+        };
+    }
+
+    private void writeRequest(DataOutput out, RpcRequest request) throws IOException {
+        out.writeInt(request.getServiceId());
+        if (request.getServiceId() != 0) {
+            // the ids replace the names and the parameter types
+            writeVarInt(out, request.getMethodId());
+        } else {
+            writeString(out, request.getClassName());
+            writeString(out, request.getMethodName());
+            writeString(out, request.getVersion());
+            Class<?>[] parameterTypes = request.getParameterTypes();
+            int typeCount = parameterTypes == null ? -1 : parameterTypes.length;
+            writeVarInt(out, typeCount + 1);
+            for (int i = 0; i < typeCount; i++) {
+                writeString(out, parameterTypes[i].getName());
+            }
+        }
+        Object[] parameters = request.getParameters();
+        int parameterCount = parameters == null ? -1 : parameters.length;
+        writeVarInt(out, parameterCount + 1);
+        for (int i = 0; i < parameterCount; i++) {
+            writeValue(out, parameters[i]);
+        }
+    }
+
+    private RpcRequest readRequest(DataInput in) throws IOException, ClassNotFoundException {
+        RpcRequest request = new RpcRequest();
+        request.setServiceId(in.readInt());
+        if (request.getServiceId() != 0) {
+            request.setMethodId(readVarInt(in));
+        } else {
+            request.setClassName(readString(in));
+            request.setMethodName(readString(in));
+            request.setVersion(readString(in));
+            int typeCount = readCount(in);
+            if (typeCount >= 0) {
+                Class<?>[] parameterTypes = new Class<?>[typeCount];
+                for (int i = 0; i < typeCount; i++) {
+                    parameterTypes[i] = resolveClass(readString(in));
+                }
+                request.setParameterTypes(parameterTypes);
+            }
+        }
+        int parameterCount = readCount(in);
+        if (parameterCount >= 0) {
+            Object[] parameters = new Object[parameterCount];
+            for (int i = 0; i < parameterCount; i++) {
+                parameters[i] = readValue(in);
+            }
+            request.setParameters(parameters);
+        }
+        return request;
+    }
+
+    private void writeResponse(DataOutput out, RpcResponse response) throws IOException {
+        writeString(out, response.getError());
+        writeValue(out, response.getResult());
+    }
+
+    private RpcResponse readResponse(DataInput in) throws IOException, ClassNotFoundException {
+        RpcResponse response = new RpcResponse();
+        response.setError(readString(in));
+        response.setResult(readValue(in));
+        return response;
+    }
+
+    /**
+     * Write a nullable string, the length is shifted by one so that 0 means null
+     */
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length == -1) {
+            return null;
+        }
+        return new String(readFully(in, length), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        return readFully(in, readVarInt(in));
+    }
+
+    /**
+     * Read the number of parameters or parameter types, shifted by one so that -1 means null
+     */
+    private static int readCount(DataInput in) throws IOException {
+        int count = readVarInt(in) - 1;
+        if (count < -1 || count > MAX_PARAMETERS) {
+            throw new IOException("Malformed parameter count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Read length bytes. A corrupt or malicious length fails with an IOException instead of
+     * allocating it: a long array is only allocated at once when the source holds that many bytes,
+     * otherwise it grows with the bytes actually read until the body ends
+     */
+    private static byte[] readFully(DataInput in, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Malformed length: " + length);
+        }
+        if (length <= CHUNK_SIZE || (in instanceof InputStream stream && stream.available() >= length)) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int remaining = length;
+        while (remaining > 0) {
+            int n = Math.min(remaining, CHUNK_SIZE);
+            in.readFully(chunk, 0, n);
+            out.write(chunk, 0, n);
+            remaining -= n;
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed var int");
+    }
+
+    private static Class<?> resolveClass(String className) throws ClassNotFoundException {
+        Class<?> clazz = PRIMITIVE_CLASSES.get(className);
+        if (clazz != null) {
+            return clazz;
+        }
+        clazz = CLASS_CACHE.get(className);
+        if (clazz == null) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null) {
+                classLoader = BinarySerializer.class.getClassLoader();
+            }
+            clazz = Class.forName(className, false, classLoader);
+            CLASS_CACHE.put(className, clazz);
+        }
+        return clazz;
+    }
+
+}
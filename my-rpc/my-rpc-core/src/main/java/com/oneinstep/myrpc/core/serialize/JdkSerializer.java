@@ -0,0 +1,44 @@
+package com.oneinstep.myrpc.core.serialize;
+
+import java.io.*;
+
+/**
+ * JDK serializer
+ * <p>
+ * Based on ObjectOutputStream / ObjectInputStream, works for any Serializable object.
+ * It is the fallback when the peer does not support any other serializer.
+ * </p>
+ */
+public class JdkSerializer implements Serializer {
+
+    public static final byte TYPE = 1;
+
+    public static final String NAME = "jdk";
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+        objectOutputStream.writeObject(obj);
+        objectOutputStream.flush();
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        try {
+            return clazz.cast(new ObjectInputStream(in).readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -50,7 +50,7 @@ public class SerializeUtil {
 
     public static void main(String[] args) {
         RpcRequest request = new RpcRequest();
-        request.setRequestId("f0ee3c9d-4b63-4a98-b171-8bf68abdb02c");
+        request.setRequestId(1L);
         request.setClassName("com.oneinstep.myrpc.demo.api.ExampleService");
         request.setMethodName("sayHello");
         request.setParameterTypes(new Class<?>[]{String.class});
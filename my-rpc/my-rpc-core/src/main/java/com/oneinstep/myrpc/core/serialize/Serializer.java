@@ -0,0 +1,84 @@
+package com.oneinstep.myrpc.core.serialize;
+
+import com.oneinstep.myrpc.core.exception.RpcException;
+
+import java.io.*;
+
+/**
+ * Serializer
+ * <p>
+ * Each serializer owns a unique type byte which is written in front of the frame body,
+ * so the peer can pick the same serializer when decoding.
+ * The stream methods are used by the codec to write into / read from the Netty buffer directly,
+ * the byte array methods are kept for the callers that need a standalone copy.
+ * </p>
+ */
+public interface Serializer {
+
+    /**
+     * serializer type, written into the frame
+     *
+     * @return serializer type
+     */
+    byte getType();
+
+    /**
+     * serializer name, used in the configuration
+     *
+     * @return serializer name
+     */
+    String getName();
+
+    /**
+     * Serialize object into the output stream, the stream is not closed
+     *
+     * @param obj object
+     * @param out output stream
+     * @throws IOException io exception
+     */
+    void serialize(Object obj, OutputStream out) throws IOException;
+
+    /**
+     * Deserialize object from the input stream, the stream is not closed
+     *
+     * @param in    input stream
+     * @param clazz object class
+     * @param <T>   object type
+     * @return object
+     * @throws IOException io exception
+     */
+    <T> T deserialize(InputStream in, Class<T> clazz) throws IOException;
+
+    /**
+     * Serialize object to byte array
+     *
+     * @param obj object
+     * @return byte array
+     */
+    default byte[] serialize(Object obj) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try {
+            serialize(obj, out);
+        } catch (IOException e) {
+            throw new RpcException("Failed to serialize object", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deserialize byte array to object
+     *
+     * @param bytes byte array
+     * @param clazz object class
+     * @param <T>   object type
+     * @return object
+     */
+    default <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try {
+            return deserialize(new ByteArrayInputStream(bytes), clazz);
+        } catch (IOException e) {
+            throw new RpcException("Failed to deserialize byte array to object", e);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.oneinstep.myrpc.core.serialize;
+
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compare the encoded size and the time per operation of the serializers
+ * <p>
+ * A plain main-method benchmark: every serializer is warmed up first, then the round trip
+ * (serialize + deserialize) of a typical request and response is measured,
+ * both through byte arrays and straight through a pooled direct ByteBuf as the codec does.
+ * </p>
+ */
+@Slf4j
+public class SerializerBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURE_ITERATIONS = 1_000_000;
+
+    /**
+     * Prevent the JIT from eliminating the benchmark loop
+     */
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(1L);
+        request.setClassName("com.oneinstep.myrpc.demo.api.ExampleService");
+        request.setMethodName("sayHello");
+        request.setVersion("1.0");
+        request.setParameterTypes(new Class<?>[]{String.class, int.class});
+        request.setParameters(new Object[]{"World!", 1});
+
+        RpcRequest idRequest = new RpcRequest();
+        idRequest.setRequestId(1L);
+        idRequest.setServiceId(0x5A5A5A5A);
+        idRequest.setMethodId(1);
+        idRequest.setParameters(new Object[]{"World!", 1});
+
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setResult("Hello, World! (1)");
+
+        List<Serializer> serializers = List.of(new JdkSerializer(), new BinarySerializer());
+        for (Serializer serializer : serializers) {
+            run(serializer, request, RpcRequest.class, WARMUP_ITERATIONS);
+            run(serializer, response, RpcResponse.class, WARMUP_ITERATIONS);
+            runDirect(serializer, request, RpcRequest.class, WARMUP_ITERATIONS);
+            run(serializer, idRequest, RpcRequest.class, WARMUP_ITERATIONS);
+            runDirect(serializer, response, RpcResponse.class, WARMUP_ITERATIONS);
+        }
+        for (Serializer serializer : serializers) {
+            report(serializer, request, RpcRequest.class);
+            report(serializer, idRequest, RpcRequest.class);
+            report(serializer, response, RpcResponse.class);
+        }
+        log.info("sink: {}", sink);
+    }
+
+    private static void report(Serializer serializer, Object message, Class<?> clazz) throws IOException {
+        int size = serializer.serialize(message).length;
+        long nanos = run(serializer, message, clazz, MEASURE_ITERATIONS);
+        long directNanos = runDirect(serializer, message, clazz, MEASURE_ITERATIONS);
+        log.info("{} {}: {} bytes, {} ns/op (byte[]), {} ns/op (direct ByteBuf)", serializer.getName(),
+                clazz.getSimpleName(), size, nanos / MEASURE_ITERATIONS, directNanos / MEASURE_ITERATIONS);
+    }
+
+    private static long run(Serializer serializer, Object message, Class<?> clazz, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            byte[] bytes = serializer.serialize(message);
+            sink += bytes.length + serializer.deserialize(bytes, clazz).hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runDirect(Serializer serializer, Object message, Class<?> clazz, int iterations) throws IOException {
+        PooledByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ByteBuf buf = allocator.directBuffer();
+            try {
+                serializer.serialize(message, new ByteBufOutputStream(buf));
+                sink += buf.readableBytes() + serializer.deserialize(new ByteBufInputStream(buf), clazz).hashCode();
+            } finally {
+                buf.release();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+}
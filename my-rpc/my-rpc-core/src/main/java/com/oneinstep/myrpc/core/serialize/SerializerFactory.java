@@ -0,0 +1,87 @@
+package com.oneinstep.myrpc.core.serialize;
+
+import com.oneinstep.myrpc.core.exception.RpcException;
+import lombok.experimental.UtilityClass;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializer factory
+ * Look up the serializer by the type byte in the frame or by the configured name
+ */
+@UtilityClass
+public class SerializerFactory {
+
+    /**
+     * type -> serializer, indexed by the unsigned type byte
+     */
+    private static final Serializer[] SERIALIZERS = new Serializer[256];
+
+    /**
+     * name -> serializer
+     */
+    private static final Map<String, Serializer> SERIALIZER_NAME_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(new JdkSerializer());
+        register(new BinarySerializer());
+    }
+
+    /**
+     * Register a serializer
+     *
+     * @param serializer serializer
+     */
+    public static synchronized void register(Serializer serializer) {
+        SERIALIZERS[serializer.getType() & 0xFF] = serializer;
+        SERIALIZER_NAME_MAP.put(serializer.getName(), serializer);
+    }
+
+    /**
+     * Get the serializer by the type byte
+     *
+     * @param type serializer type
+     * @return serializer
+     */
+    public static Serializer getSerializer(byte type) {
+        Serializer serializer = SERIALIZERS[type & 0xFF];
+        if (serializer == null) {
+            throw new RpcException("Unsupported serializer type: " + type);
+        }
+        return serializer;
+    }
+
+    /**
+     * Get the serializer by name, fall back to the JDK serializer if the name is unknown
+     *
+     * @param name serializer name
+     * @return serializer
+     */
+    public static Serializer getSerializer(String name) {
+        if (name == null || name.isEmpty()) {
+            return getDefaultSerializer();
+        }
+        return SERIALIZER_NAME_MAP.getOrDefault(name, getDefaultSerializer());
+    }
+
+    /**
+     * Names of the registered serializers
+     *
+     * @return serializer names
+     */
+    public static List<String> getSerializerNames() {
+        return List.copyOf(SERIALIZER_NAME_MAP.keySet());
+    }
+
+    /**
+     * The fallback serializer
+     *
+     * @return JDK serializer
+     */
+    public static Serializer getDefaultSerializer() {
+        return SERIALIZERS[JdkSerializer.TYPE];
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.oneinstep.myrpc.core.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.*;
+
+/**
+ * Dispatch strategy of the RPC server, configured by my-rpc.server.dispatch
+ */
+@Slf4j
+public enum DispatchStrategy {
+
+    /**
+     * Run on the I/O thread, only for methods that never block
+     */
+    INLINE {
+        @Override
+        public RequestDispatcher newDispatcher(int threads, int queueCapacity) {
+            return task -> {
+                task.run();
+                return true;
+            };
+        }
+    },
+    /**
+     * Run on a bounded platform thread pool, rejected once the queue is full
+     */
+    POOL {
+        @Override
+        public RequestDispatcher newDispatcher(int threads, int queueCapacity) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), new DefaultThreadFactory("my-rpc-biz"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            return new ExecutorRequestDispatcher(executor, Integer.MAX_VALUE);
+        }
+    },
+    /**
+     * Run on a virtual thread per request (JDK 21+), at most queueCapacity requests in flight
+     * Fall back to POOL on older JDKs
+     */
+    VIRTUAL {
+        @Override
+        public RequestDispatcher newDispatcher(int threads, int queueCapacity) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                return new ExecutorRequestDispatcher(executor, queueCapacity);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads are not available on this JDK, fall back to the thread pool");
+                return POOL.newDispatcher(threads, queueCapacity);
+            }
+        }
+    };
+
+    /**
+     * Create the dispatcher
+     *
+     * @param threads       number of the platform threads
+     * @param queueCapacity max number of the requests waiting for a thread (or in flight, for virtual threads)
+     * @return dispatcher
+     */
+    public abstract RequestDispatcher newDispatcher(int threads, int queueCapacity);
+
+    /**
+     * Dispatch to an executor, limit the requests in flight and reject the rest immediately
+     */
+    private static class ExecutorRequestDispatcher implements RequestDispatcher {
+
+        private final ExecutorService executor;
+
+        private final Semaphore permits;
+
+        ExecutorRequestDispatcher(ExecutorService executor, int maxInFlight) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        @Override
+        public boolean dispatch(Runnable task) {
+            if (!permits.tryAcquire()) {
+                return false;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                return false;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.oneinstep.myrpc.core.server;
+
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import io.netty.util.collection.IntObjectHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The invokers of all the exported services, built once when the server starts
+ * Keyed by the service id and method id (see {@link ServiceDescriptor}),
+ * or by the interface, the version and the method signature for the requests carrying names.
+ * Two services whose ids collide are only served by names: their id requests get
+ * STATUS_UNKNOWN_METHOD and the consumers fall back to the names.
+ */
+@Slf4j
+public class InvokerTable {
+
+    private final Map<String, MethodInvoker> invokers = new ConcurrentHashMap<>();
+
+    /**
+     * service id -> invokers indexed by method id
+     * Filled before the server starts and read only afterwards
+     */
+    private final IntObjectHashMap<MethodInvoker[]> invokersById = new IntObjectHashMap<>();
+
+    /**
+     * service id -> the service owning it, null once two services have collided on it
+     */
+    private final IntObjectHashMap<ServiceDescriptor> serviceIds = new IntObjectHashMap<>();
+
+    /**
+     * Build the invokers of all the methods of the service interface
+     *
+     * @param interfaceClass service interface
+     * @param version        service version
+     * @param serviceBean    service bean
+     * @throws IllegalAccessException the method can not be accessed
+     */
+    public void addService(Class<?> interfaceClass, String version, Object serviceBean) throws IllegalAccessException {
+        ServiceDescriptor descriptor = ServiceDescriptor.of(interfaceClass, version);
+        Method[] methods = descriptor.getMethods();
+        MethodInvoker[] methodInvokers = new MethodInvoker[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            methodInvokers[i] = new MethodInvoker(serviceBean, method);
+            String key = key(interfaceClass.getName(), version, method.getName(), method.getParameterTypes());
+            invokers.put(key, methodInvokers[i]);
+        }
+        addServiceId(descriptor, methodInvokers);
+        log.info("Built {} invokers for service: {}#{}, service id: {}", methods.length, interfaceClass.getName(),
+                version, descriptor.getServiceId());
+    }
+
+    private void addServiceId(ServiceDescriptor descriptor, MethodInvoker[] methodInvokers) {
+        int serviceId = descriptor.getServiceId();
+        if (!serviceIds.containsKey(serviceId) || serviceIds.get(serviceId) == descriptor) {
+            // a new id, or the same service exported again, replaced like its names
+            serviceIds.put(serviceId, descriptor);
+            invokersById.put(serviceId, methodInvokers);
+            return;
+        }
+        ServiceDescriptor owner = serviceIds.put(serviceId, null);
+        invokersById.remove(serviceId);
+        log.warn("Service id {} of {}#{} collides with {}, both services are only served by names", serviceId,
+                descriptor.getServiceName(), descriptor.getVersion(),
+                owner == null ? "another service" : owner.getServiceName() + "#" + owner.getVersion());
+    }
+
+    /**
+     * Get the invoker by ids
+     *
+     * @param serviceId service id
+     * @param methodId  method id
+     * @return invoker, null if the ids are unknown
+     */
+    public MethodInvoker getInvoker(int serviceId, int methodId) {
+        MethodInvoker[] methodInvokers = invokersById.get(serviceId);
+        if (methodInvokers == null || methodId < 0 || methodId >= methodInvokers.length) {
+            return null;
+        }
+        return methodInvokers[methodId];
+    }
+
+    /**
+     * Get the invoker of the method
+     *
+     * @param className      interface name
+     * @param version        service version
+     * @param methodName     method name
+     * @param parameterTypes parameter types
+     * @return invoker, null if the method is not exported
+     */
+    public MethodInvoker getInvoker(String className, String version, String methodName, Class<?>[] parameterTypes) {
+        return invokers.get(key(className, version, methodName, parameterTypes));
+    }
+
+    private static String key(String className, String version, String methodName, Class<?>[] parameterTypes) {
+        StringBuilder key = new StringBuilder(128)
+                .append(className).append('#').append(version).append('.').append(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(parameterTypes[i].getName());
+            }
+        }
+        return key.append(')').toString();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.oneinstep.myrpc.core.server;
+
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Invoke one method of a service bean
+ * <p>
+ * The method handle is bound to the service bean and adapted to {@code (Object[]) -> Object} once,
+ * so an invocation is a single {@code invokeExact} without the access checks and the argument copies
+ * of {@link Method#invoke}.
+ * </p>
+ */
+@Getter
+public class MethodInvoker {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * Interface method
+     */
+    private final Method method;
+
+    private final MethodHandle methodHandle;
+
+    /**
+     * The method returns an Iterator or a Stream whose elements are streamed to the consumer
+     */
+    private final boolean streaming;
+
+    public MethodInvoker(Object serviceBean, Method method) throws IllegalAccessException {
+        this.method = method;
+        this.streaming = ServiceDescriptor.isStreaming(method);
+        // The interface may not be public, suppress the access check once here
+        method.setAccessible(true);
+        this.methodHandle = MethodHandles.lookup().unreflect(method)
+                .bindTo(serviceBean)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * Invoke the method, the exception thrown by the method is thrown as is
+     *
+     * @param args arguments
+     * @return result, null for void methods
+     * @throws Throwable exception thrown by the method
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return methodHandle.invokeExact(args == null ? new Object[0] : args);
+    }
+
+}
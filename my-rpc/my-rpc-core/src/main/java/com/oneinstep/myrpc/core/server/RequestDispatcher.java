@@ -0,0 +1,22 @@
+package com.oneinstep.myrpc.core.server;
+
+/**
+ * Decide which thread runs the business code of a request
+ */
+public interface RequestDispatcher {
+
+    /**
+     * Dispatch the request
+     *
+     * @param task process the request and send the response
+     * @return false if the request is rejected because the server is busy
+     */
+    boolean dispatch(Runnable task);
+
+    /**
+     * Release the threads of the dispatcher
+     */
+    default void shutdown() {
+    }
+
+}
@@ -1,22 +1,28 @@
 package com.oneinstep.myrpc.core.server;
 
 import com.oneinstep.myrpc.core.annotation.RpcService;
+import com.oneinstep.myrpc.core.codec.CodecConfig;
 import com.oneinstep.myrpc.core.codec.RpcDecoder;
 import com.oneinstep.myrpc.core.codec.RpcEncoder;
-import com.oneinstep.myrpc.core.dto.RpcRequest;
-import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.codec.RpcFrameDecoder;
+import com.oneinstep.myrpc.core.local.LocalServices;
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import com.oneinstep.myrpc.core.registry.Endpoint;
+import com.oneinstep.myrpc.core.registry.ServiceRegistration;
 import com.oneinstep.myrpc.core.registry.ServiceRegistry;
+import com.oneinstep.myrpc.core.serialize.SerializerFactory;
+import com.oneinstep.myrpc.core.trace.WireTrace;
+import com.oneinstep.myrpc.core.trace.WireTraceHandler;
+import com.oneinstep.myrpc.core.transport.HeartbeatHandler;
+import com.oneinstep.myrpc.core.transport.NettyTransport;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
+import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.timeout.IdleStateHandler;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -25,11 +31,19 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RPC server
@@ -44,15 +58,170 @@ public class RpcServer implements ApplicationListener<ContextRefreshedEvent> {
      */
     @Resource
     private ServiceRegistry serviceRegistry;
+    /**
+     * Netty transport and socket options
+     */
+    @Resource
+    private NettyTransport nettyTransport;
+    /**
+     * Sampled wire trace
+     */
+    @Resource
+    private WireTrace wireTrace;
+    /**
+     * Frame size limits and compression
+     */
+    @Resource
+    private CodecConfig codecConfig;
+    /**
+     * The services called in process by the consumers of this JVM
+     */
+    @Resource
+    private LocalServices localServices;
     /**
      * Server port
      */
     @Value("${netty.bind.port}")
     private int bindPort;
     /**
-     * Store the service name and corresponding service object
+     * 同时监听的 Unix domain socket 路径，发布到注册中心，同一台主机上的消费者通过它连接，空表示不监听
+     * 需要 epoll transport
+     */
+    @Value("${my-rpc.server.unix-socket:}")
+    private String unixSocket;
+    /**
+     * Where the business code runs: inline (I/O thread), pool or virtual
+     */
+    @Value("${my-rpc.server.dispatch:pool}")
+    private String dispatch;
+    /**
+     * Number of the business threads
+     */
+    @Value("${my-rpc.server.threads:200}")
+    private int threads;
+    /**
+     * Max number of the requests waiting for a business thread, the rest are rejected as busy
+     */
+    @Value("${my-rpc.server.queue-capacity:1000}")
+    private int queueCapacity;
+    /**
+     * The host published to the registry, the local address if empty
+     */
+    @Value("${my-rpc.server.host:}")
+    private String host;
+    /**
+     * Weight published to the registry, relative to the other providers of the same services
+     */
+    @Value("${my-rpc.server.weight:100}")
+    private int weight;
+    /**
+     * Close the connections that have received nothing for this long, must be longer than the heartbeat interval
+     */
+    @Value("${my-rpc.server.idle-timeout-ms:90000}")
+    private long idleTimeoutMs;
+    /**
+     * Cancel a server stream whose consumer grants no credits for this long, e.g. an Iterator abandoned
+     * without being closed, should be longer than the call timeouts of the consumers, 0 never
+     */
+    @Value("${my-rpc.server.stream-idle-timeout-ms:60000}")
+    private long streamIdleTimeoutMs;
+    /**
+     * The published weight ramps up linearly over this window after the start, 0 disables the warm-up
+     */
+    @Value("${my-rpc.server.warmup-ms:60000}")
+    private long warmupMs;
+    /**
+     * 优雅停机：注销服务后等待消费者收到通知的时间
+     */
+    @Value("${my-rpc.server.shutdown-wait-ms:2000}")
+    private long shutdownWaitMs;
+    /**
+     * 优雅停机：等待处理中的请求完成的最长时间
+     */
+    @Value("${my-rpc.server.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+    /**
+     * The provider nodes created in the registry
+     */
+    private volatile List<String> registeredPaths = List.of();
+    /**
+     * Requests received and not answered yet
+     */
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicBoolean shuttingDown = new AtomicBoolean();
+    private volatile EventLoopGroup bossGroup;
+    private volatile EventLoopGroup workerGroup;
+    private volatile RequestDispatcher dispatcher;
+    /**
+     * The listening channels, one per acceptor
+     */
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+    /**
+     * The invokers of the exported services
+     */
+    private final InvokerTable invokerTable = new InvokerTable();
+
+    /**
+     * The host published to the registry, the local address if not configured
      */
-    private final ConcurrentMap<String, Object> handlerMap = new ConcurrentHashMap<>();
+    private String resolveHost() {
+        if (host != null && !host.isEmpty()) {
+            return host;
+        }
+        try {
+            String ipAddress = InetAddress.getLocalHost().getHostAddress();
+            log.info("本机IP地址: {}", ipAddress);
+            return ipAddress;
+        } catch (UnknownHostException e) {
+            log.error("Failed to get the IP address", e);
+            return null;
+        }
+    }
+
+    /**
+     * The Unix domain socket to listen on, null if not configured or the transport can not do it
+     */
+    private String resolveSocketPath() {
+        if (unixSocket == null || unixSocket.isEmpty()) {
+            return null;
+        }
+        if (!nettyTransport.isDomainSocketAvailable()) {
+            log.warn("my-rpc.server.unix-socket needs the epoll transport, listen on TCP only");
+            return null;
+        }
+        return unixSocket;
+    }
+
+    /**
+     * Listen on the Unix domain socket as well, with the pipeline of the TCP connections.
+     * A failure does not stop the server: the socket file is missing, so the consumers use TCP
+     */
+    private void bindDomainSocket(String socketPath, ChannelInitializer<Channel> childHandler) throws InterruptedException {
+        try {
+            // 上一个进程异常退出时留下的 socket 文件会让 bind 失败
+            Files.deleteIfExists(Path.of(socketPath));
+            ServerBootstrap bootstrap = new ServerBootstrap();
+            bootstrap.group(bossGroup, workerGroup).childHandler(childHandler);
+            nettyTransport.configureDomainSocket(bootstrap);
+            ChannelFuture future = bootstrap.bind(new DomainSocketAddress(socketPath)).await();
+            if (!future.isSuccess()) {
+                log.error("Failed to listen on the unix socket {}", socketPath, future.cause());
+                return;
+            }
+            serverChannels.add(future.channel());
+            log.info("Netty Server listening on unix socket: {}", socketPath);
+        } catch (IOException e) {
+            log.error("Failed to delete the stale unix socket {}", socketPath, e);
+        }
+    }
+
+    private void register(List<ServiceRegistration> registrations) {
+        try {
+            registeredPaths = serviceRegistry.register(registrations);
+        } catch (Exception e) {
+            log.error("Failed to register services", e);
+        }
+    }
 
     /**
      * Spring 容器初始化完成后调用
@@ -73,78 +242,169 @@ public class RpcServer implements ApplicationListener<ContextRefreshedEvent> {
         }
 
         log.info("Registering services...");
+        // The address published to the registry, resolved once for all the services
+        String ipAddress = resolveHost();
+        if (ipAddress == null) {
+            return;
+        }
+        String socketPath = resolveSocketPath();
+        long startTimestamp = System.currentTimeMillis();
+        List<ServiceRegistration> registrations = new ArrayList<>();
         for (Object serviceBean : serviceBeanMap.values()) {
             RpcService annotation = serviceBean.getClass().getAnnotation(RpcService.class);
             Class<?> aClass = annotation.value();
-            String interfaceName = aClass.getName();
             String version = annotation.version();
             try {
-                // Register the service to ZooKeeper
-                // get the service address
-                InetAddress inetAddress = InetAddress.getLocalHost();
-                String ipAddress = inetAddress.getHostAddress();
-                log.info("本机IP地址: {}", ipAddress);
-                serviceRegistry.register(interfaceName, version, ipAddress + ":" + bindPort);
-                // Store the service name and corresponding service object
-                handlerMap.putIfAbsent(interfaceName, serviceBean);
-                log.info("Registered service: {}", interfaceName);
-            } catch (UnknownHostException e) {
-                log.error("Failed to get the IP address", e);
-            } catch (Exception e) {
-                log.error("Failed to register service", e);
+                // Build the invokers of the service methods
+                invokerTable.addService(aClass, version, serviceBean);
+            } catch (IllegalAccessException e) {
+                log.error("Failed to export service: {}", aClass.getName(), e);
+                continue;
             }
+            ServiceDescriptor descriptor = ServiceDescriptor.of(aClass, version);
+            localServices.export(descriptor, invokerTable);
+            Endpoint endpoint = Endpoint.builder()
+                    .host(ipAddress)
+                    .port(bindPort)
+                    .weight(weight)
+                    .protocol(Endpoint.DEFAULT_PROTOCOL)
+                    .serializers(SerializerFactory.getSerializerNames())
+                    .serviceId(descriptor.getServiceId())
+                    .methods(Arrays.stream(descriptor.getMethods()).map(ServiceDescriptor::signature).toList())
+                    .warmupTimestamp(startTimestamp)
+                    .warmupMs(warmupMs)
+                    .socketPath(socketPath)
+                    .build();
+            registrations.add(new ServiceRegistration(aClass.getName(), version, endpoint));
         }
 
         log.info("Initializing Netty Server...");
 
+        dispatcher = DispatchStrategy.valueOf(dispatch.toUpperCase())
+                .newDispatcher(threads, queueCapacity);
+        log.info("Requests are dispatched by: {}", dispatch);
+
         new Thread(() -> {
             // Initialize and start Netty server
-            EventLoopGroup bossGroup = new NioEventLoopGroup();
-            EventLoopGroup workerGroup = new NioEventLoopGroup();
+            bossGroup = nettyTransport.newEventLoopGroup(nettyTransport.getAcceptors(), "my-rpc-boss");
+            workerGroup = nettyTransport.newEventLoopGroup(0, "my-rpc-worker");
 
             try {
+                // TCP 和 Unix domain socket 的连接使用相同的 pipeline
+                ChannelInitializer<Channel> childHandler = new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        // 合并业务线程写回的响应的 flush
+                        nettyTransport.addFlushConsolidation(channel.pipeline());
+                        channel.pipeline()
+                                // 客户端定期发送心跳，读超时说明客户端已经不在了
+                                .addLast(new IdleStateHandler(idleTimeoutMs, 0, 0, TimeUnit.MILLISECONDS))
+                                // 按消息头中的长度拆帧，处理半包消息
+                                .addLast(new RpcFrameDecoder(codecConfig.getMaxFrameSize()))
+                                // 添加编码器，响应使用客户端请求时选择的序列化方式
+                                .addLast(new RpcEncoder(SerializerFactory.getDefaultSerializer(), codecConfig))
+                                // 添加解码器
+                                .addLast(new RpcDecoder(codecConfig))
+                                // 回应心跳
+                                .addLast(HeartbeatHandler.SERVER)
+                                // 采样追踪编解码后的消息
+                                .addLast(new WireTraceHandler(wireTrace))
+                                // Processing RPC request
+                                .addLast(new RpcServerHandler(invokerTable, dispatcher, inFlightRequests,
+                                        streamIdleTimeoutMs));
+                    }
+                };
                 ServerBootstrap bootstrap = new ServerBootstrap();
-                bootstrap.group(bossGroup, workerGroup)
-                        .channel(NioServerSocketChannel.class)
-                        .childHandler(new ChannelInitializer<SocketChannel>() {
-                            @Override
-                            protected void initChannel(SocketChannel socketChannel) {
-                                socketChannel.pipeline()
-                                        // 添加 LengthFieldBasedFrameDecoder 解码器，处理半包消息
-                                        .addLast(new LengthFieldBasedFrameDecoder(
-                                                Integer.MAX_VALUE, // max frame length
-                                                0,                 // length field offset
-                                                4,                 // length field length
-                                                0,                 // length adjustment
-                                                4                  // initial bytes to strip
-                                        ))
-                                        // 添加日志处理器
-                                        .addLast(new LoggingHandler(LogLevel.INFO))
-                                        // 添加编码器
-                                        .addLast(new RpcEncoder(RpcResponse.class))
-                                        // 添加解码器
-                                        .addLast(new RpcDecoder(RpcRequest.class))
-                                        // Processing RPC request
-                                        .addLast(new RpcServerHandler(handlerMap));
-                            }
-                        })
-                        .option(ChannelOption.SO_BACKLOG, 1024)
-                        .childOption(ChannelOption.SO_KEEPALIVE, true);
-
-                // Bind the server port
-                ChannelFuture future = bootstrap.bind(bindPort).sync();
-                log.info("Netty Server started on port: {}", bindPort);
-                // Wait until the server socket is closed
-                future.channel().closeFuture().sync();
+                bootstrap.group(bossGroup, workerGroup).childHandler(childHandler);
+                nettyTransport.configure(bootstrap);
+
+                // Bind the server port, with SO_REUSEPORT every acceptor binds its own listening socket
+                for (int i = 0; i < nettyTransport.getAcceptors(); i++) {
+                    serverChannels.add(bootstrap.bind(bindPort).sync().channel());
+                }
+                log.info("Netty Server started on port: {}, acceptors: {}", bindPort, serverChannels.size());
+                if (socketPath != null) {
+                    bindDomainSocket(socketPath, childHandler);
+                }
+                // Publish the services once the server accepts connections, all in one transaction
+                register(registrations);
+                // Wait until the server sockets are closed
+                for (Channel serverChannel : serverChannels) {
+                    serverChannel.closeFuture().sync();
+                }
             } catch (InterruptedException e) {
                 log.error("Failed to start RPC Server", e);
                 Thread.currentThread().interrupt();
             } finally {
-                // Shut down the event loop group
-                workerGroup.shutdownGracefully();
-                bossGroup.shutdownGracefully();
+                // The server failed to start or its channels were closed by something else.
+                // shutdown() closes the event loops itself once the requests in flight are answered
+                if (!shuttingDown.get()) {
+                    closeEventLoops();
+                }
             }
-        }).start();
+        }, "my-rpc-server").start();
+    }
+
+    /**
+     * Graceful shutdown
+     * Deregister the services, give the consumers time to see it, stop accepting connections,
+     * wait for the requests in flight, then close the connections and the event loops
+     */
+    @PreDestroy
+    public void shutdown() {
+        // the services of this JVM are no longer called in process
+        localServices.clear();
+        if (workerGroup == null || !shuttingDown.compareAndSet(false, true)) {
+            return;
+        }
+        log.info("Shutting down RPC Server...");
+        List<String> paths = registeredPaths;
+        registeredPaths = List.of();
+        if (!paths.isEmpty()) {
+            serviceRegistry.unregister(paths);
+            sleep(shutdownWaitMs);
+        }
+        serverChannels.forEach(channel -> channel.close().syncUninterruptibly());
+
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        while (inFlightRequests.get() > 0 && System.currentTimeMillis() < deadline) {
+            // an interrupted thread stops waiting, every later sleep would return at once
+            if (!sleep(10)) {
+                break;
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            log.warn("Shutdown interrupted, {} requests are still in flight", inFlightRequests.get());
+        } else if (inFlightRequests.get() > 0) {
+            log.warn("{} requests are still in flight after {} ms", inFlightRequests.get(), shutdownTimeoutMs);
+        }
+        closeEventLoops();
+        log.info("RPC Server stopped");
+    }
+
+    private void closeEventLoops() {
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully().syncUninterruptibly();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully().syncUninterruptibly();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * @return false if the thread was interrupted, the interrupt flag is set again
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
 }
@@ -1,86 +1,215 @@
 package com.oneinstep.myrpc.core.server;
 
+import com.oneinstep.myrpc.core.codec.RpcProtocol;
 import com.oneinstep.myrpc.core.dto.RpcRequest;
 import com.oneinstep.myrpc.core.dto.RpcResponse;
+import com.oneinstep.myrpc.core.dto.WindowUpdate;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Processing RPC requests
  * <p>
  * The server-side handler processes the request and returns the result to the client.
  * The handler is responsible for processing the request and returning the result.
+ * The business code runs on the thread chosen by the {@link RequestDispatcher},
+ * a request the dispatcher rejects is answered with a busy status right away.
+ * </p>
+ * <p>
+ * A method returning an Iterator or a Stream is served as a {@link ServerStream},
+ * fed by the window updates of the consumer.
  * </p>
  */
 @Slf4j
 public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
 
     /**
-     * Service name and handler object mapping
+     * The invokers of the exported services
+     */
+    private final InvokerTable invokerTable;
+    /**
+     * Dispatch the requests to the business threads
+     */
+    private final RequestDispatcher dispatcher;
+    /**
+     * Requests received and not answered yet, shared by all the connections, waited for on shutdown
      */
-    private final ConcurrentMap<String, Object> handlerMap;
+    private final AtomicInteger inFlightRequests;
+    /**
+     * Cancel a stream which gets no window update for this long while it has no credits, 0 never
+     */
+    private final long streamIdleTimeoutMs;
+    /**
+     * The streams of this connection which are not over yet, by request id
+     */
+    private final Map<Long, ServerStream> streams = new ConcurrentHashMap<>();
 
-    public RpcServerHandler(ConcurrentMap<String, Object> handlerMap) {
-        this.handlerMap = handlerMap;
+    public RpcServerHandler(InvokerTable invokerTable, RequestDispatcher dispatcher, AtomicInteger inFlightRequests,
+                            long streamIdleTimeoutMs) {
+        this.invokerTable = invokerTable;
+        this.dispatcher = dispatcher;
+        this.inFlightRequests = inFlightRequests;
+        this.streamIdleTimeoutMs = streamIdleTimeoutMs;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof WindowUpdate windowUpdate) {
+            ServerStream stream = streams.get(windowUpdate.getRequestId());
+            if (stream == null) {
+                log.debug("No stream found for window update: {}", windowUpdate);
+            } else if (windowUpdate.isCancel()) {
+                stream.cancel();
+            } else {
+                stream.grant(windowUpdate.getCredits());
+            }
+            return;
+        }
+        super.channelRead(ctx, msg);
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RpcRequest request) {
-        log.info("Received request: {}", request);
+        // Every request gets exactly one response, sendResponse decrements the count
+        inFlightRequests.incrementAndGet();
+        MethodInvoker invoker = findInvoker(request);
+        // Register the stream before dispatching, the first window update follows the request right away
+        ServerStream stream = invoker != null && invoker.isStreaming() ? openStream(ctx, request.getRequestId()) : null;
+        if (!dispatcher.dispatch(() -> process(ctx, request, invoker, stream))) {
+            log.warn("Server busy, reject request: {}", request.getRequestId());
+            if (stream != null) {
+                streams.remove(request.getRequestId());
+            }
+            RpcResponse rpcResponse = new RpcResponse();
+            rpcResponse.setRequestId(request.getRequestId());
+            rpcResponse.setStatus(RpcProtocol.STATUS_BUSY);
+            rpcResponse.setError("Server busy");
+            sendResponse(ctx, rpcResponse);
+        }
+    }
+
+    private ServerStream openStream(ChannelHandlerContext ctx, long requestId) {
+        ServerStream stream = new ServerStream(requestId, ctx, dispatcher, streamIdleTimeoutMs, last -> {
+            streams.remove(requestId);
+            if (last != null) {
+                sendResponse(ctx, last);
+            } else {
+                // cancelled by the consumer, nothing to answer
+                inFlightRequests.decrementAndGet();
+            }
+        });
+        streams.put(requestId, stream);
+        return stream;
+    }
 
+    /**
+     * Invoke the service and send the response, runs on the thread chosen by the dispatcher
+     *
+     * @param ctx     channel context
+     * @param request request
+     * @param invoker invoker of the method, null if the method is not exported
+     * @param stream  stream of a streaming method, null otherwise
+     */
+    private void process(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker, ServerStream stream) {
         RpcResponse rpcResponse = new RpcResponse();
         // Set the request ID
         rpcResponse.setRequestId(request.getRequestId());
 
+        // The provider does not know the ids, let the consumer resend the request with names
+        if (invoker == null && request.getServiceId() != 0) {
+            rpcResponse.setStatus(RpcProtocol.STATUS_UNKNOWN_METHOD);
+            rpcResponse.setError("Unknown service id: " + request.getServiceId() + ", method id: " + request.getMethodId());
+            sendResponse(ctx, rpcResponse);
+            return;
+        }
+
         try {
-            // Handle the request
-            Object result = handleRequest(request);
+            if (invoker == null) {
+                throw new NoSuchMethodException(request.getClassName() + "#" + request.getVersion()
+                        + "." + request.getMethodName());
+            }
+            // Execute the method
+            Object result = invoker.invoke(request.getParameters());
+            // The elements are sent as the consumer grants credits, the stream sends the last response
+            if (stream != null) {
+                stream.start(result);
+                return;
+            }
+            // The service completes asynchronously, send the response when the future is done
+            if (result instanceof CompletableFuture<?> future) {
+                future.whenComplete((value, throwable) -> {
+                    if (throwable != null) {
+                        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                        setError(rpcResponse, cause);
+                        logError(request, invoker, cause);
+                    } else {
+                        rpcResponse.setResult(value);
+                    }
+                    sendResponse(ctx, rpcResponse);
+                });
+                return;
+            }
             rpcResponse.setResult(result);
-        } catch (Exception e) {
-            Throwable cause = e.getCause();
-            rpcResponse.setError(Objects.requireNonNullElse(cause, e).toString());
-            log.error("RPC Server handle request error", e);
+        } catch (Throwable e) {
+            if (stream != null) {
+                streams.remove(request.getRequestId());
+            }
+            setError(rpcResponse, e);
+            logError(request, invoker, e);
         }
 
-        log.info("Sending response: {}", rpcResponse);
+        sendResponse(ctx, rpcResponse);
+    }
+
+    private void setError(RpcResponse rpcResponse, Throwable cause) {
+        rpcResponse.setStatus(RpcProtocol.STATUS_ERROR);
+        rpcResponse.setError(cause.toString());
+    }
+
+    /**
+     * Log an exception of the service, names the method but not the parameters
+     */
+    private void logError(RpcRequest request, MethodInvoker invoker, Throwable cause) {
+        Object method = invoker != null ? invoker.getMethod()
+                : request.getClassName() + "#" + request.getVersion() + "." + request.getMethodName();
+        log.error("RPC Server handle request error, request: {}, method: {}", request.getRequestId(), method, cause);
+    }
+
+    private void sendResponse(ChannelHandlerContext ctx, RpcResponse rpcResponse) {
         // Send the response
         ctx.writeAndFlush(rpcResponse).addListener(future -> {
-            if (future.isSuccess()) {
-                log.info("Response sent successfully: {}", rpcResponse);
-            } else {
-                log.error("Failed to send response: {}", rpcResponse);
+            inFlightRequests.decrementAndGet();
+            if (!future.isSuccess()) {
+                log.warn("Failed to send response: {}", rpcResponse.getRequestId(), future.cause());
             }
         });
     }
 
     /**
-     * Handle the request
+     * Get the invoker built when the server started
      *
      * @param rpcRequest request object
-     * @return result
-     * @throws NoSuchMethodException     no such method
-     * @throws IllegalAccessException    illegal access
-     * @throws InvocationTargetException invocation target exception
+     * @return invoker, null if the method is not exported
      */
-    private Object handleRequest(RpcRequest rpcRequest) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-        String className = rpcRequest.getClassName();
-        String methodName = rpcRequest.getMethodName();
-        Class<?>[] parameterTypes = rpcRequest.getParameterTypes();
-        Object[] parameters = rpcRequest.getParameters();
-
-        // Get the service bean
-        Object serviceBean = handlerMap.get(className);
-        // Get the method
-        Method method = serviceBean.getClass().getMethod(methodName, parameterTypes);
-        // Execute the method
-        return method.invoke(serviceBean, parameters);
+    private MethodInvoker findInvoker(RpcRequest rpcRequest) {
+        return rpcRequest.getServiceId() != 0
+                ? invokerTable.getInvoker(rpcRequest.getServiceId(), rpcRequest.getMethodId())
+                : invokerTable.getInvoker(rpcRequest.getClassName(), rpcRequest.getVersion(),
+                rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
     }
 
-}
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // The consumer is gone, stop the streams and close their iterators
+        streams.values().forEach(ServerStream::cancel);
+        super.channelInactive(ctx);
+    }
 
+}
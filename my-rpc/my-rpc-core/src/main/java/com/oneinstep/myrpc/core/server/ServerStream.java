@@ -0,0 +1,261 @@
+package com.oneinstep.myrpc.core.server;
+
+import com.oneinstep.myrpc.core.codec.RpcProtocol;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.BaseStream;
+
+/**
+ * The provider side of one server-streaming call
+ * <p>
+ * The elements are pulled from the Iterator or Stream returned by the service and sent one per credit
+ * granted by the consumer, so a slow consumer holds the provider back instead of the elements piling up
+ * in memory. The pulls may block, e.g. on a database cursor, so they run on the dispatcher, never on the I/O thread:
+ * a pump runs while there are credits, and the next window update dispatches a new one.
+ * The stream ends with a response without the stream flag, an error response if the iterator fails,
+ * or nothing if the consumer has cancelled it. The Stream returned by the service is closed in any case.
+ * A stream waiting for credits which gets no window update within the idle timeout, e.g. because the consumer
+ * stopped iterating without closing it, is cancelled with an error response, so it does not hold the resources
+ * of the service and the shutdown drain for the life of the connection.
+ * </p>
+ */
+@Slf4j
+class ServerStream {
+
+    /**
+     * delay before dispatching the pump again when the dispatcher is busy
+     */
+    private static final long BUSY_RETRY_MS = 10;
+
+    /**
+     * elements written in one task of the event loop
+     */
+    private static final int MAX_BATCH = 64;
+
+    private final long requestId;
+
+    private final ChannelHandlerContext ctx;
+
+    private final RequestDispatcher dispatcher;
+
+    /**
+     * max wait for a window update while there are no credits left
+     */
+    private final long idleTimeoutMs;
+
+    /**
+     * called once when the stream is over, with the last response to send, or null if the consumer has cancelled
+     */
+    private final Consumer<RpcResponse> onEnd;
+
+    private final AtomicInteger credits = new AtomicInteger();
+
+    /**
+     * a pump is running or dispatched, at most one at a time so the elements keep their order
+     */
+    private final AtomicBoolean pumping = new AtomicBoolean();
+
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    /**
+     * set once the service has returned
+     */
+    private volatile Iterator<?> iterator;
+
+    private volatile AutoCloseable resource;
+
+    private volatile boolean cancelled;
+
+    /**
+     * cancelled by the idle timeout, not by the consumer
+     */
+    private volatile boolean expired;
+
+    /**
+     * System.nanoTime() of the last window update
+     */
+    private volatile long lastGrantNanos = System.nanoTime();
+
+    ServerStream(long requestId, ChannelHandlerContext ctx, RequestDispatcher dispatcher, long idleTimeoutMs,
+                 Consumer<RpcResponse> onEnd) {
+        this.requestId = requestId;
+        this.ctx = ctx;
+        this.dispatcher = dispatcher;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * Start sending the result of the service
+     *
+     * @param result Iterator or Stream returned by the service, null for an empty stream
+     */
+    void start(Object result) {
+        if (result instanceof BaseStream<?, ?> stream) {
+            resource = stream;
+            iterator = stream.iterator();
+        } else if (result instanceof Iterator<?> it) {
+            if (it instanceof AutoCloseable closeable) {
+                resource = closeable;
+            }
+            iterator = it;
+        } else {
+            iterator = Collections.emptyIterator();
+        }
+        lastGrantNanos = System.nanoTime();
+        if (idleTimeoutMs > 0) {
+            ctx.executor().schedule(this::checkIdle, idleTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        schedule();
+    }
+
+    /**
+     * Credits granted by the consumer
+     *
+     * @param count number of elements the consumer accepts
+     */
+    void grant(int count) {
+        lastGrantNanos = System.nanoTime();
+        credits.accumulateAndGet(count, (current, added) -> (int) Math.min((long) current + added, Integer.MAX_VALUE));
+        schedule();
+    }
+
+    /**
+     * The consumer has closed the stream or the connection is lost
+     */
+    void cancel() {
+        cancelled = true;
+        schedule();
+    }
+
+    /**
+     * Cancel the stream if it has waited for credits longer than the idle timeout, runs on the event loop
+     */
+    private void checkIdle() {
+        if (ended.get() || cancelled) {
+            return;
+        }
+        // a pump still sending or pulling a slow iterator is not waiting for the consumer
+        if (credits.get() > 0 || pumping.get()) {
+            ctx.executor().schedule(this::checkIdle, idleTimeoutMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastGrantNanos);
+        if (idleMs < idleTimeoutMs) {
+            ctx.executor().schedule(this::checkIdle, idleTimeoutMs - idleMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        log.warn("Stream {} received no window update in {} ms, cancel it", requestId, idleMs);
+        expired = true;
+        cancel();
+    }
+
+    private void schedule() {
+        if (iterator == null || ended.get() || !pumping.compareAndSet(false, true)) {
+            return;
+        }
+        if (dispatcher.dispatch(this::pump)) {
+            return;
+        }
+        pumping.set(false);
+        if (!ctx.channel().isActive()) {
+            // nobody to send to, and the event loop may be shutting down
+            end(null);
+            return;
+        }
+        ctx.executor().schedule(this::schedule, BUSY_RETRY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void pump() {
+        List<RpcResponse> elements = new ArrayList<>();
+        try {
+            while (!cancelled && credits.get() > 0) {
+                if (!iterator.hasNext()) {
+                    send(elements);
+                    end(lastResponse(null));
+                    return;
+                }
+                RpcResponse element = new RpcResponse();
+                element.setRequestId(requestId);
+                element.setResult(iterator.next());
+                element.setStreamItem(true);
+                credits.decrementAndGet();
+                elements.add(element);
+                if (elements.size() >= MAX_BATCH) {
+                    send(elements);
+                    elements = new ArrayList<>();
+                }
+            }
+            send(elements);
+            if (cancelled) {
+                end(expired ? lastResponse(new TimeoutException("Stream " + requestId
+                        + " received no window update in " + idleTimeoutMs + " ms")) : null);
+                return;
+            }
+        } catch (Throwable e) {
+            log.debug("Stream {} failed", requestId, e);
+            send(elements);
+            end(lastResponse(e));
+            return;
+        } finally {
+            pumping.set(false);
+        }
+        // a window update or a cancel may have arrived after the loop has checked
+        if (credits.get() > 0 || cancelled) {
+            schedule();
+        }
+    }
+
+    /**
+     * Write the elements in one task of the event loop instead of one task per element
+     */
+    private void send(List<RpcResponse> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        ctx.executor().execute(() -> {
+            // 写入失败会关闭连接，连接关闭时取消所有的流
+            for (RpcResponse element : elements) {
+                ctx.write(element, ctx.voidPromise());
+            }
+            ctx.flush();
+        });
+    }
+
+    private RpcResponse lastResponse(Throwable error) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(requestId);
+        if (error != null) {
+            response.setStatus(RpcProtocol.STATUS_ERROR);
+            response.setError(error.toString());
+        }
+        return response;
+    }
+
+    private void end(RpcResponse last) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        AutoCloseable closeable = resource;
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Failed to close the stream {}", requestId, e);
+            }
+        }
+        onEnd.accept(last);
+    }
+
+}
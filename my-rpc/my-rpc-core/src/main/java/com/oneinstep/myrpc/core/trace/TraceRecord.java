@@ -0,0 +1,22 @@
+package com.oneinstep.myrpc.core.trace;
+
+/**
+ * One traced RPC message
+ *
+ * @param timestamp     epoch milliseconds
+ * @param direction     inbound or outbound
+ * @param remoteAddress remote address of the channel
+ * @param requestId     request id
+ * @param service       service name, or the service id when the name is not known
+ * @param method        method name, null for responses
+ * @param status        response status, 0 for requests
+ * @param error         response error, null for requests
+ */
+public record TraceRecord(long timestamp, Direction direction, String remoteAddress, long requestId,
+                          String service, String method, byte status, String error) {
+
+    public enum Direction {
+        IN, OUT
+    }
+
+}
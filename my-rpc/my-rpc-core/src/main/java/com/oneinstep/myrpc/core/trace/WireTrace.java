@@ -0,0 +1,170 @@
+package com.oneinstep.myrpc.core.trace;
+
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.metadata.ServiceDescriptor;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sampled wire trace
+ * <p>
+ * The {@link WireTraceHandler} of every channel asks this component whether a request is sampled,
+ * the sampled requests and their responses are kept in a ring buffer of the most recent records,
+ * which can be dumped on demand. While tracing is switched off the handlers only read one volatile flag.
+ * </p>
+ * <pre>
+ * my-rpc.trace.enabled: false
+ * my-rpc.trace.sample-rate: 0.01
+ * my-rpc.trace.service-rates: com.foo.OrderService=1.0,com.foo.UserService=0.1
+ * my-rpc.trace.buffer-size: 1024
+ * </pre>
+ */
+@Component
+@Slf4j
+public class WireTrace {
+
+    /**
+     * 是否开启追踪，运行时可以切换
+     */
+    @Getter
+    @Setter
+    @Value("${my-rpc.trace.enabled:false}")
+    private volatile boolean enabled;
+    /**
+     * 没有单独配置的服务的采样率，0 ~ 1
+     */
+    @Getter
+    @Setter
+    @Value("${my-rpc.trace.sample-rate:0.01}")
+    private volatile double defaultSampleRate;
+    /**
+     * 按服务配置的采样率：service=rate,service=rate
+     */
+    @Value("${my-rpc.trace.service-rates:}")
+    private String serviceRatesConfig;
+    /**
+     * 环形缓冲区保留的最近记录数，向上取整为 2 的幂
+     */
+    @Value("${my-rpc.trace.buffer-size:1024}")
+    private int bufferSize;
+
+    /**
+     * service name -> sample rate
+     */
+    private final Map<String, Double> serviceRates = new ConcurrentHashMap<>();
+
+    private AtomicReferenceArray<TraceRecord> buffer;
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int capacity = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        buffer = new AtomicReferenceArray<>(capacity);
+        if (serviceRatesConfig != null && !serviceRatesConfig.isBlank()) {
+            for (String entry : serviceRatesConfig.split(",")) {
+                String[] pair = entry.trim().split("=");
+                if (pair.length != 2) {
+                    log.warn("Invalid trace sample rate: {}", entry);
+                    continue;
+                }
+                serviceRates.put(pair[0].trim(), Double.parseDouble(pair[1].trim()));
+            }
+        }
+    }
+
+    /**
+     * Set the sample rate of a service
+     *
+     * @param serviceName service interface name
+     * @param rate        sample rate, 0 ~ 1
+     */
+    public void setSampleRate(String serviceName, double rate) {
+        serviceRates.put(serviceName, rate);
+    }
+
+    /**
+     * Decide whether the request is traced
+     *
+     * @param request request
+     * @return true if sampled
+     */
+    public boolean sample(RpcRequest request) {
+        double rate = serviceRates.getOrDefault(serviceName(request), defaultSampleRate);
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Append a record to the ring buffer, the oldest record is overwritten
+     *
+     * @param traceRecord trace record
+     */
+    public void record(TraceRecord traceRecord) {
+        buffer.set((int) (cursor.getAndIncrement() & (buffer.length() - 1)), traceRecord);
+    }
+
+    /**
+     * The records in the ring buffer, oldest first
+     *
+     * @return recent trace records
+     */
+    public List<TraceRecord> dump() {
+        long end = cursor.get();
+        long start = Math.max(0, end - buffer.length());
+        List<TraceRecord> records = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            TraceRecord traceRecord = buffer.get((int) (i & (buffer.length() - 1)));
+            if (traceRecord != null) {
+                records.add(traceRecord);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Write the records in the ring buffer to the log
+     */
+    public void dumpToLog() {
+        List<TraceRecord> records = dump();
+        log.info("Wire trace, {} records", records.size());
+        records.forEach(traceRecord -> log.info("{}", traceRecord));
+    }
+
+    /**
+     * The service name of the request, resolved from the service id when the request carries the ids
+     */
+    static String serviceName(RpcRequest request) {
+        if (request.getServiceId() == 0) {
+            return request.getClassName();
+        }
+        ServiceDescriptor descriptor = ServiceDescriptor.find(request.getServiceId());
+        return descriptor != null ? descriptor.getServiceName() : "#" + request.getServiceId();
+    }
+
+    /**
+     * The method name of the request, resolved from the method id when the request carries the ids
+     */
+    static String methodName(RpcRequest request) {
+        if (request.getServiceId() == 0) {
+            return request.getMethodName();
+        }
+        ServiceDescriptor descriptor = ServiceDescriptor.find(request.getServiceId());
+        if (descriptor == null || request.getMethodId() < 0 || request.getMethodId() >= descriptor.getMethods().length) {
+            return "#" + request.getMethodId();
+        }
+        return descriptor.getMethods()[request.getMethodId()].getName();
+    }
+
+}
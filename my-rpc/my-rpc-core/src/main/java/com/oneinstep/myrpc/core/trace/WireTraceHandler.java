@@ -0,0 +1,81 @@
+package com.oneinstep.myrpc.core.trace;
+
+import com.oneinstep.myrpc.core.dto.RpcRequest;
+import com.oneinstep.myrpc.core.dto.RpcResponse;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+
+/**
+ * Trace the sampled requests and their responses of one channel
+ * <p>
+ * Sits behind the codec, so it sees the decoded messages and no payload is copied or hex-dumped.
+ * A response is traced when its request was sampled on the same channel.
+ * All the callbacks run on the event loop of the channel, so the sampled ids need no locking.
+ * </p>
+ */
+public class WireTraceHandler extends ChannelDuplexHandler {
+
+    /**
+     * Sampled requests whose response has not been seen, bounded in case the responses never come
+     */
+    private static final int MAX_SAMPLED_IN_FLIGHT = 1024;
+
+    private final WireTrace wireTrace;
+
+    /**
+     * request id -> service name
+     */
+    private final LongObjectMap<String> sampled = new LongObjectHashMap<>();
+
+    public WireTraceHandler(WireTrace wireTrace) {
+        this.wireTrace = wireTrace;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (wireTrace.isEnabled()) {
+            trace(ctx, msg, TraceRecord.Direction.IN);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (wireTrace.isEnabled()) {
+            trace(ctx, msg, TraceRecord.Direction.OUT);
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private void trace(ChannelHandlerContext ctx, Object msg, TraceRecord.Direction direction) {
+        if (msg instanceof RpcRequest request) {
+            if (!wireTrace.sample(request)) {
+                return;
+            }
+            String service = WireTrace.serviceName(request);
+            if (sampled.size() >= MAX_SAMPLED_IN_FLIGHT) {
+                sampled.clear();
+            }
+            sampled.put(request.getRequestId(), service);
+            wireTrace.record(new TraceRecord(System.currentTimeMillis(), direction,
+                    String.valueOf(ctx.channel().remoteAddress()), request.getRequestId(), service,
+                    WireTrace.methodName(request), (byte) 0, null));
+        } else if (msg instanceof RpcResponse response) {
+            // the elements of a stream are not traced, only the last response
+            if (response.isStreamItem()) {
+                return;
+            }
+            String service = sampled.remove(response.getRequestId());
+            if (service == null) {
+                return;
+            }
+            wireTrace.record(new TraceRecord(System.currentTimeMillis(), direction,
+                    String.valueOf(ctx.channel().remoteAddress()), response.getRequestId(), service,
+                    null, response.getStatus(), response.getError()));
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.oneinstep.myrpc.core.transport;
+
+import com.oneinstep.myrpc.core.dto.Heartbeat;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keep the connection alive and close it when the peer is gone
+ * <p>
+ * Works with the {@link io.netty.handler.timeout.IdleStateHandler} in front of it.
+ * The client sends a PING when it has written nothing for the heartbeat interval and the server answers with a PONG,
+ * so on both sides a reader idle event means the peer has stopped answering, e.g. a half-open connection,
+ * and the connection is closed. The heartbeat messages are consumed here and never reach the RPC handlers.
+ * </p>
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class HeartbeatHandler extends ChannelDuplexHandler {
+
+    /**
+     * Client side: sends the pings
+     */
+    public static final HeartbeatHandler CLIENT = new HeartbeatHandler(true);
+
+    /**
+     * Server side: answers the pings
+     */
+    public static final HeartbeatHandler SERVER = new HeartbeatHandler(false);
+
+    private final boolean client;
+
+    private HeartbeatHandler(boolean client) {
+        this.client = client;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Heartbeat heartbeat) {
+            if (heartbeat == Heartbeat.PING && !client) {
+                ctx.writeAndFlush(Heartbeat.PONG, ctx.voidPromise());
+            }
+            return;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent idleStateEvent) {
+            if (idleStateEvent.state() == IdleState.READER_IDLE) {
+                log.warn("No data from {} for too long, close the connection", ctx.channel().remoteAddress());
+                ctx.close();
+            } else if (idleStateEvent.state() == IdleState.WRITER_IDLE && client) {
+                ctx.writeAndFlush(Heartbeat.PING).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            }
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.oneinstep.myrpc.core.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Netty transport and socket options shared by the RPC server and the RPC clients
+ * <p>
+ * netty.transport: auto / epoll / io_uring / nio.
+ * auto picks epoll when it is available and NIO otherwise, io_uring is never picked automatically.
+ * A transport that is not available on this host falls back to NIO.
+ * Unix domain sockets need the epoll transport.
+ * </p>
+ */
+@Component
+@Slf4j
+public class NettyTransport {
+
+    /**
+     * auto / epoll / io_uring / nio
+     */
+    @Value("${netty.transport:auto}")
+    private String transportName;
+    /**
+     * 服务端 accept 的 channel 数，大于 1 时需要 epoll 和 SO_REUSEPORT，由内核在多个监听 socket 间分配连接
+     */
+    @Getter
+    @Value("${netty.acceptors:1}")
+    private int acceptors;
+    /**
+     * SO_REUSEPORT, epoll only
+     */
+    @Value("${netty.so-reuseport:false}")
+    private boolean reusePort;
+    /**
+     * TCP_QUICKACK, epoll only
+     */
+    @Value("${netty.tcp-quickack:false}")
+    private boolean tcpQuickAck;
+    /**
+     * SO_RCVBUF in bytes, 0 keeps the OS default
+     */
+    @Value("${netty.so-rcvbuf:0}")
+    private int receiveBufferSize;
+    /**
+     * SO_SNDBUF in bytes, 0 keeps the OS default
+     */
+    @Value("${netty.so-sndbuf:0}")
+    private int sendBufferSize;
+    /**
+     * 合并 flush：最多这么多次 flush 才真正写一次 socket，0 表示关闭
+     * 没有读操作进行中时，同一个 event loop tick 内的 flush 也会合并成一次
+     */
+    @Value("${netty.flush-consolidation:256}")
+    private int explicitFlushAfterFlushes;
+
+    @Getter
+    private TransportType type;
+
+    @PostConstruct
+    public void init() {
+        type = resolve(transportName);
+        if (acceptors > 1 && !(type == TransportType.EPOLL && reusePort)) {
+            log.warn("netty.acceptors={} needs the epoll transport and netty.so-reuseport=true, use 1 acceptor", acceptors);
+            acceptors = 1;
+        }
+        log.info("Netty transport: {}", type);
+    }
+
+    private static TransportType resolve(String name) {
+        if (name == null || name.isEmpty() || "auto".equalsIgnoreCase(name)) {
+            return TransportType.EPOLL.isAvailable() ? TransportType.EPOLL : TransportType.NIO;
+        }
+        TransportType requested = TransportType.valueOf(name.replace('-', '_').toUpperCase());
+        if (!requested.isAvailable()) {
+            log.warn("Netty transport {} is not available, fall back to NIO", requested);
+            return TransportType.NIO;
+        }
+        return requested;
+    }
+
+    /**
+     * Create an event loop group of the selected transport
+     *
+     * @param threads  number of threads, 0 means the Netty default
+     * @param poolName thread name prefix
+     * @return event loop group
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, String poolName) {
+        return type.newEventLoopGroup(threads, new DefaultThreadFactory(poolName, true));
+    }
+
+    /**
+     * Add the flush consolidation handler in front of the pipeline, so that the flushes of the handlers behind it
+     * are batched into fewer syscalls
+     *
+     * @param pipeline channel pipeline
+     */
+    public void addFlushConsolidation(ChannelPipeline pipeline) {
+        if (explicitFlushAfterFlushes > 0) {
+            pipeline.addFirst(new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+        }
+    }
+
+    /**
+     * Set the channel class and the socket options of the server
+     *
+     * @param bootstrap server bootstrap
+     */
+    public void configure(ServerBootstrap bootstrap) {
+        bootstrap.channel(type.serverChannelClass())
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, true);
+        if (receiveBufferSize > 0) {
+            // accepted sockets inherit the receive buffer of the listening socket, it must be set before listen
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (type == TransportType.EPOLL) {
+            if (reusePort) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            if (tcpQuickAck) {
+                bootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+            }
+        }
+    }
+
+    /**
+     * Whether the server and the clients can use Unix domain sockets, i.e. the transport is epoll
+     *
+     * @return true if available
+     */
+    public boolean isDomainSocketAvailable() {
+        return type == TransportType.EPOLL;
+    }
+
+    /**
+     * Set the channel class and the socket options of a Unix domain socket server,
+     * the TCP options do not apply
+     *
+     * @param bootstrap server bootstrap
+     */
+    public void configureDomainSocket(ServerBootstrap bootstrap) {
+        bootstrap.channel(EpollServerDomainSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024);
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+    }
+
+    /**
+     * Set the channel class and the socket options of a Unix domain socket client
+     *
+     * @param bootstrap client bootstrap
+     */
+    public void configureDomainSocket(Bootstrap bootstrap) {
+        bootstrap.channel(EpollDomainSocketChannel.class);
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+    }
+
+    /**
+     * Set the channel class and the socket options of a client
+     *
+     * @param bootstrap client bootstrap
+     */
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.channel(type.channelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true);
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (type == TransportType.EPOLL && tcpQuickAck) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.oneinstep.myrpc.core.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Netty transport
+ * <p>
+ * NIO works everywhere, epoll needs Linux and the native library of netty-all.
+ * io_uring lives in the netty-incubator-transport-native-io_uring artifact which is not a dependency of my-rpc,
+ * so it is loaded reflectively and is only available when the application adds that artifact.
+ * </p>
+ */
+public enum TransportType {
+
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return NioSocketChannel.class;
+        }
+    },
+
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return EpollSocketChannel.class;
+        }
+    },
+
+    IO_URING {
+        private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+        @Override
+        public boolean isAvailable() {
+            try {
+                Method isAvailable = Class.forName(PACKAGE + "IOUring").getMethod("isAvailable");
+                return (boolean) isAvailable.invoke(null);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return false;
+            }
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            try {
+                return (EventLoopGroup) Class.forName(PACKAGE + "IOUringEventLoopGroup")
+                        .getConstructor(int.class, ThreadFactory.class)
+                        .newInstance(threads, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("io_uring transport is not available", e);
+            }
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return loadClass(PACKAGE + "IOUringServerSocketChannel", ServerChannel.class);
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return loadClass(PACKAGE + "IOUringSocketChannel", Channel.class);
+        }
+    };
+
+    /**
+     * Whether the transport can be used on this host
+     *
+     * @return true if available
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Create an event loop group of this transport
+     *
+     * @param threads       number of threads, 0 means the Netty default
+     * @param threadFactory thread factory
+     * @return event loop group
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    /**
+     * The server channel class of this transport
+     *
+     * @return server channel class
+     */
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * The client channel class of this transport
+     *
+     * @return channel class
+     */
+    public abstract Class<? extends Channel> channelClass();
+
+    private static <T> Class<? extends T> loadClass(String className, Class<T> type) {
+        try {
+            return Class.forName(className).asSubclass(type);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("io_uring transport is not available", e);
+        }
+    }
+
+}
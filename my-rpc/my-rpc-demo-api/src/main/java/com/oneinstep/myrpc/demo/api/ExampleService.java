@@ -1,5 +1,8 @@
 package com.oneinstep.myrpc.demo.api;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * ExampleService
  */
@@ -11,4 +14,22 @@ public interface ExampleService {
      * @return String
      */
     String sayHello(String name, int times);
+
+    /**
+     * sayHello, asynchronously
+     *
+     * @param name  name
+     * @param times times
+     * @return CompletableFuture of the greeting
+     */
+    CompletableFuture<String> sayHelloAsync(String name, int times);
+
+    /**
+     * sayHello, streamed: the greetings are produced while the consumer iterates
+     *
+     * @param name  name
+     * @param count number of greetings
+     * @return Iterator of the greetings
+     */
+    Iterator<String> sayHelloStream(String name, int count);
 }
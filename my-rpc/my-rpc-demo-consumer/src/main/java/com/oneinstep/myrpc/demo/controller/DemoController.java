@@ -6,8 +6,13 @@ import com.oneinstep.myrpc.core.exception.ServiceNotFoundException;
 import com.oneinstep.myrpc.demo.api.ExampleService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -40,4 +45,40 @@ public class DemoController {
         return result;
     }
 
+    /**
+     * Fan out concurrent calls from the request thread without blocking on each of them
+     *
+     * @param count number of calls
+     * @return number of successful calls
+     */
+    @GetMapping("/sayHelloBatch")
+    public CompletableFuture<String> sayHelloBatch(@RequestParam(defaultValue = "100") int count) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(exampleService.sayHelloAsync("World!", COUNTER.getAndIncrement()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .handle((ignored, throwable) -> {
+                    long succeeded = futures.stream().filter(f -> !f.isCompletedExceptionally()).count();
+                    return succeeded + "/" + count + " calls succeeded";
+                });
+    }
+
+    /**
+     * Consume a streamed result, the elements are received while they are counted
+     *
+     * @param count number of greetings
+     * @return number of greetings received
+     */
+    @GetMapping("/sayHelloStream")
+    public String sayHelloStream(@RequestParam(defaultValue = "10000") int count) {
+        Iterator<String> greetings = exampleService.sayHelloStream("World!", count);
+        long received = 0;
+        while (greetings.hasNext()) {
+            greetings.next();
+            received++;
+        }
+        return received + " greetings received";
+    }
+
 }
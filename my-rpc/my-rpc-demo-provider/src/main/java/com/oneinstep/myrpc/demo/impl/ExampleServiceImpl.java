@@ -4,6 +4,10 @@ import com.oneinstep.myrpc.core.annotation.RpcService;
 import com.oneinstep.myrpc.demo.api.ExampleService;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
 /**
  * Example service implementation
  */
@@ -18,4 +22,15 @@ public class ExampleServiceImpl implements ExampleService {
         return "Hello, " + name + " (" + times + ")";
     }
 
+    @Override
+    public CompletableFuture<String> sayHelloAsync(String name, int times) {
+        return CompletableFuture.completedFuture(sayHello(name, times));
+    }
+
+    @Override
+    public Iterator<String> sayHelloStream(String name, int count) {
+        // 惰性生成，不在内存中保存整个结果
+        return IntStream.range(0, count).mapToObj(i -> "Hello, " + name + " (" + i + ")").iterator();
+    }
+
 }